@@ -210,6 +210,8 @@ public class ApiInit {
 
   public void init() {
     this.ctx.getRestfulClientFactory().setSocketTimeout(getSocketTimout());
+    FhirDataProviderRegistry.configure(this.config);
+    FhirHelper.setParallelPageRequests(this.config.getParallelPageRequests());
 
     Optional<ApiReportDefsBundleConfig> measureReportAggregator = config.getReportDefs().getBundles().stream().filter(bundleConfig -> StringUtils.isEmpty(bundleConfig.getReportAggregator())).findFirst();
     if (StringUtils.isEmpty(config.getReportAggregator()) && measureReportAggregator.isPresent()) {
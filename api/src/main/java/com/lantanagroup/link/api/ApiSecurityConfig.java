@@ -2,8 +2,10 @@ package com.lantanagroup.link.api;
 
 import com.lantanagroup.link.api.auth.LinkAuthenticationSuccessHandler;
 import com.lantanagroup.link.api.auth.PreAuthTokenHeaderFilter;
+import com.lantanagroup.link.auth.JwksKeyCache;
 import com.lantanagroup.link.auth.LinkAuthManager;
 import com.lantanagroup.link.auth.LinkCredentials;
+import com.lantanagroup.link.auth.SamsTokenValidator;
 import com.lantanagroup.link.config.api.ApiConfig;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -40,6 +42,9 @@ public class ApiSecurityConfig extends WebSecurityConfigurerAdapter {
   @Override
   protected void configure(HttpSecurity http) throws Exception {
     PreAuthTokenHeaderFilter authFilter = new PreAuthTokenHeaderFilter("Authorization", linkCredentials, config);
+    JwksKeyCache.setCacheDuration(config.getLinkAuthManager().getJwksCacheDuration());
+    SamsTokenValidator.setCacheDuration(config.getLinkAuthManager().getTokenValidationCacheDuration());
+    SamsTokenValidator.setConnectionSettings(config.getLinkAuthManager().getTokenValidationMaxConnections(), config.getLinkAuthManager().getTokenValidationTimeout());
     authFilter.setAuthenticationManager(
             new LinkAuthManager(
                     config.getLinkAuthManager().getIssuer(),
@@ -1,6 +1,7 @@
 package com.lantanagroup.link.api;
 
 import com.lantanagroup.link.FhirDataProvider;
+import com.lantanagroup.link.FhirDataProviderRegistry;
 import com.lantanagroup.link.FhirHelper;
 import com.lantanagroup.link.config.api.ApiConfig;
 import com.lantanagroup.link.config.api.ApiDataStoreConfig;
@@ -24,7 +25,7 @@ public class ApiUtility {
     }
 
     public static Location getAndVerifyLocation(String locationId, ApiDataStoreConfig dataStoreConfig) {
-        FhirDataProvider dataStore = new FhirDataProvider(dataStoreConfig);
+        FhirDataProvider dataStore = FhirDataProviderRegistry.get(dataStoreConfig);
         Location location = dataStore.getLocationById(locationId);
 
         // Verify that the location has position information
@@ -41,7 +42,7 @@ public class ApiUtility {
 
     public static ReportContext.MeasureContext getAndVerifyMeasure(String measureId, String evaluationService) throws Exception {
         // Pull the report definition bundle from CQF (eval service)
-        FhirDataProvider evaluationProvider = new FhirDataProvider(evaluationService);
+        FhirDataProvider evaluationProvider = FhirDataProviderRegistry.get(evaluationService);
         Bundle reportDefBundle = evaluationProvider.getBundleById(measureId);
 
         // Create & Return MeasureContext
@@ -98,7 +99,7 @@ public class ApiUtility {
     }
 
     public static Location getLocationFromDataStore(ApiDataStoreConfig dataStoreConfig, String locationId) {
-        FhirDataProvider dataStore = new FhirDataProvider(dataStoreConfig);
+        FhirDataProvider dataStore = FhirDataProviderRegistry.get(dataStoreConfig);
         return dataStore.getLocationById(locationId);
     }
 
@@ -21,6 +21,7 @@ import java.util.stream.Collectors;
  */
 public class ReportGenerator {
   private static final Logger logger = LoggerFactory.getLogger(ReportGenerator.class);
+  private static final int PATIENT_REPORT_BATCH_SIZE = 50;
 
   private ReportContext reportContext;
   private ReportContext.MeasureContext measureContext;
@@ -68,11 +69,7 @@ public class ReportGenerator {
                 // Tag individual MeasureReport as patient-data as it references a patient and will be found for expunge
                 patientMeasureReport.getMeta().addTag(Constants.MAIN_SYSTEM, Constants.PATIENT_DATA_TAG,"");
 
-                logger.info(String.format("Persisting patient %s measure report with id %s", patient, measureReportId));
-                Stopwatch stopwatch = this.stopwatchManager.start("store-measure-report");
-                this.reportContext.getFhirProvider().updateResource(patientMeasureReport);
-                stopwatch.stop();
-
+                // The patient measure report is persisted along with the others by store()
                 return patientMeasureReport;
               }).collect(Collectors.toList())).get();
       // to avoid thread collision remove saving the patientMeasureReport on the FhirServer from the above parallelStream
@@ -92,10 +89,10 @@ public class ReportGenerator {
    * Stores the master measure report on the Fhir Server.
    **/
   public void store() {
-
-    this.measureContext.getPatientReports().parallelStream().forEach(report -> {
-      this.reportContext.getFhirProvider().updateResource(report);
-    });
+    logger.info("Persisting {} patient measure reports", this.measureContext.getPatientReports().size());
+    Stopwatch stopwatch = this.stopwatchManager.start("store-measure-report");
+    this.reportContext.getFhirProvider().updateResources(this.measureContext.getPatientReports(), PATIENT_REPORT_BATCH_SIZE);
+    stopwatch.stop();
 
     this.reportContext.getFhirProvider().updateResource(measureContext.getMeasureReport());
   }
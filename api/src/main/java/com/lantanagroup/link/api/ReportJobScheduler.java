@@ -0,0 +1,124 @@
+package com.lantanagroup.link.api;
+
+import com.lantanagroup.link.config.api.ApiConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the long-running jobs started through the API (report generation, data scoops, expunges, CSV processing, etc.)
+ * on a shared pool of workers, so that a job for one location does not hold up the jobs of other locations. Jobs for
+ * the same location run one at a time, in the order they were submitted. At most <code>api.job-queue-depth</code>
+ * jobs may be waiting to run; further jobs are rejected.
+ * The queue position reported for a job is its position in submission order among all waiting jobs. A job that is
+ * waiting on an earlier job for the same location may be overtaken by jobs for other locations, so the position is
+ * an indication of how many jobs are ahead of it rather than an exact count.
+ */
+@Component
+public class ReportJobScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(ReportJobScheduler.class);
+
+  private final ExecutorService executor;
+  private final int queueDepth;
+
+  // The ids of the jobs waiting to run, in the order they were submitted
+  private final ConcurrentSkipListMap<Long, String> waiting = new ConcurrentSkipListMap<>();
+  private final Map<String, Long> waitingSequences = new ConcurrentHashMap<>();
+  private final AtomicLong sequence = new AtomicLong();
+
+  // The last job submitted for each location, which the next job for the location runs after
+  private final Map<String, CompletableFuture<Void>> locationTails = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ReportJobScheduler(ApiConfig config) {
+    int workers = Math.max(1, config.getJobWorkers());
+    AtomicInteger threadCount = new AtomicInteger();
+
+    this.queueDepth = Math.max(1, config.getJobQueueDepth());
+    this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+      Thread thread = new Thread(runnable, "report-job-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    logger.info("Running up to {} jobs at a time with a queue depth of {}", workers, this.queueDepth);
+  }
+
+  /**
+   * Queues the job to run once a worker is available and (if a location is specified) no other job for the location is
+   * running or queued ahead of it
+   *
+   * @param jobId      The id of the job (Task) being run
+   * @param locationId The location the job is for, or null if the job may run alongside any other job
+   * @param job        The job to run
+   * @return The position of the job among the jobs waiting to run, in submission order (see class comment)
+   * @throws RejectedExecutionException if the queue is full
+   */
+  public synchronized int submit(String jobId, String locationId, Runnable job) {
+    if (this.waiting.size() >= this.queueDepth) {
+      throw new RejectedExecutionException(String.format("There are already %s jobs waiting to run, try again later", this.waiting.size()));
+    }
+
+    long jobSequence = this.sequence.incrementAndGet();
+    this.waiting.put(jobSequence, jobId);
+    this.waitingSequences.put(jobId, jobSequence);
+    int position = this.waiting.headMap(jobSequence).size() + 1;
+
+    Runnable wrapped = () -> {
+      this.waiting.remove(jobSequence);
+      this.waitingSequences.remove(jobId);
+
+      try {
+        job.run();
+      } catch (Exception ex) {
+        logger.error("Job {} failed: {}", jobId, ex.getMessage(), ex);
+      }
+    };
+
+    if (locationId == null) {
+      CompletableFuture.runAsync(wrapped, this.executor);
+    } else {
+      CompletableFuture<Void> previous = this.locationTails.get(locationId);
+      CompletableFuture<Void> next = previous == null ?
+              CompletableFuture.runAsync(wrapped, this.executor) :
+              // Run after the previous job however it completed, so that the job always runs and leaves the queue
+              previous.handle((result, ex) -> null).thenRunAsync(wrapped, this.executor);
+
+      this.locationTails.put(locationId, next);
+      next.whenComplete((result, ex) -> this.locationTails.remove(locationId, next));
+    }
+
+    return position;
+  }
+
+  /**
+   * @return The position of the job among the jobs waiting to run, in submission order (see class comment), or null if
+   * the job is not waiting to run (because it is running, has finished, or was not submitted to this API instance)
+   */
+  public Integer getQueuePosition(String jobId) {
+    Long jobSequence = this.waitingSequences.get(jobId);
+
+    if (jobSequence == null) {
+      return null;
+    }
+
+    return this.waiting.headMap(jobSequence).size() + 1;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+}
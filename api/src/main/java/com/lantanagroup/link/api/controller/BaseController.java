@@ -3,10 +3,19 @@ package com.lantanagroup.link.api.controller;
 import ca.uhn.fhir.context.FhirContext;
 import com.lantanagroup.link.FhirContextProvider;
 import com.lantanagroup.link.FhirDataProvider;
+import com.lantanagroup.link.api.ReportJobScheduler;
 import com.lantanagroup.link.config.api.ApiConfig;
 import com.lantanagroup.link.config.bundler.BundlerConfig;
+import com.lantanagroup.link.model.Job;
 import lombok.Setter;
+import org.hl7.fhir.r4.model.Annotation;
+import org.hl7.fhir.r4.model.Task;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
 
 
 public class BaseController {
@@ -26,8 +35,38 @@ public class BaseController {
   @Setter
   private FhirDataProvider fhirStoreProvider;
 
+  @Autowired
+  @Setter
+  private ReportJobScheduler jobScheduler;
+
   protected FhirDataProvider getFhirDataProvider() {
     return this.fhirStoreProvider;
   }
 
+  protected ReportJobScheduler getJobScheduler() {
+    return this.jobScheduler;
+  }
+
+  /**
+   * Queues the job for the (already stored) task on the shared job scheduler. When the queue is full the task is
+   * marked as failed and a 503 is returned to the caller.
+   *
+   * @param locationId The location the job is for, so that jobs for the same location run one at a time, or null
+   * @return The Job representing the task, including its position in the queue
+   */
+  protected Job submitJob(Task task, String locationId, Runnable runnable) {
+    try {
+      int position = this.jobScheduler.submit(task.getIdElement().getIdPart(), locationId, runnable);
+      Job job = new Job(task);
+      job.setQueuePosition(position);
+      return job;
+    } catch (RejectedExecutionException ex) {
+      task.addNote(new Annotation().setText(ex.getMessage()).setTime(new Date()));
+      task.setStatus(Task.TaskStatus.FAILED);
+      task.setLastModified(new Date());
+      this.getFhirDataProvider().updateResource(task);
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+  }
+
 }
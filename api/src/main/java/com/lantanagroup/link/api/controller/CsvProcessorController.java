@@ -18,8 +18,8 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
@@ -28,13 +28,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @RestController
 @RequestMapping("/api/csv")
 public class CsvProcessorController extends BaseController {
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private static final Logger logger = LoggerFactory.getLogger(CsvProcessorController.class);
     private final ApplicationContext applicationContext;
 
@@ -43,11 +40,6 @@ public class CsvProcessorController extends BaseController {
         this.applicationContext = applicationContext;
     }
 
-    @PreDestroy
-    public void shutdown() {
-        executor.shutdown();
-    }
-
     @PostMapping(value="/create-measure-reports/{locationId}", consumes = "text/csv")
     public ResponseEntity<Object> createMeasureReports(
             @AuthenticationPrincipal LinkCredentials user,
@@ -58,11 +50,15 @@ public class CsvProcessorController extends BaseController {
 
         Task task = TaskHelper.getNewTask(user, request, Constants.CSV_TO_MEASURE_REPORT);
         FhirDataProvider fhirDataProvider = getFhirDataProvider();
+        Job job;
 
         try {
             fhirDataProvider.updateResource(task);
-            executor.submit(() -> createMeasureReports(user, task.getId(), locationId, csvContent));
+            job = submitJob(task, locationId, () -> createMeasureReports(user, task.getId(), locationId, csvContent));
 
+        } catch (ResponseStatusException ex) {
+            // i.e. the job queue is full (which submitJob records on the task), so that the client knows to try again later
+            throw ex;
         } catch (Exception ex) {
             String errorMessage = String.format("Issue with CSV to MeasureReport conversion: %s", ex.getMessage());
             logger.error(errorMessage);
@@ -77,7 +73,7 @@ public class CsvProcessorController extends BaseController {
             task.setLastModified(new Date());
             fhirDataProvider.updateResource(task);
         }
-        return ResponseEntity.ok(new Job(task));
+        return ResponseEntity.ok(job);
     }
 
     private void createMeasureReports(LinkCredentials user, String taskId, String locationId, String csvContent) {
@@ -91,7 +91,9 @@ public class JobController extends BaseController {
 
             for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
                 Task task = (Task)entry.getResource();
-                jobs.add(new Job(task));
+                Job job = new Job(task);
+                job.setQueuePosition(getJobScheduler().getQueuePosition(job.getId()));
+                jobs.add(job);
             }
 
             return ResponseEntity.ok(jobs);
@@ -110,6 +112,7 @@ public class JobController extends BaseController {
             Task task = getFhirDataProvider().getTaskById(jobId);
 
             Job job = new Job(task);
+            job.setQueuePosition(getJobScheduler().getQueuePosition(job.getId()));
 
             return ResponseEntity.ok(job);
         } catch (ResourceNotFoundException ex) {
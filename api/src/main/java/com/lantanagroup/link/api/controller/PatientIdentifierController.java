@@ -407,7 +407,7 @@ public class PatientIdentifierController extends BaseController {
       throw new FHIRException(errorMessage);
     }
 
-    FhirDataProvider dataStore = new FhirDataProvider(config.getDataStore());
+    FhirDataProvider dataStore = FhirDataProviderRegistry.get(config.getDataStore());
     Location listLocation = dataStore.getLocationById(listLocationIdentifier.getValue());
     if (listLocation == null) {
       String errorMessage = String.format("List Location with id '%s' was not found on Data Store '%s'", listLocationIdentifier.getValue(), config.getDataStore().getBaseUrl());
@@ -424,7 +424,7 @@ public class PatientIdentifierController extends BaseController {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, msg);
     }
     Identifier measureIdentifier = list.getIdentifier().get(0);
-    FhirDataProvider evaluationDataProvider = new FhirDataProvider(this.config.getEvaluationService());
+    FhirDataProvider evaluationDataProvider = FhirDataProviderRegistry.get(this.config.getEvaluationService());
     Measure measure = evaluationDataProvider.findMeasureByIdentifier(measureIdentifier);
     if (measure == null) {
       String msg = String.format("Measure Identified With Value '%s' and System '%s' not found on CQF Evaluation Service", measureIdentifier.getValue(), measureIdentifier.getSystem());
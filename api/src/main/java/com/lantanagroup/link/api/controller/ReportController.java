@@ -23,14 +23,11 @@ import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @RestController
 @RequestMapping("/api/report")
@@ -45,8 +42,6 @@ public class ReportController extends BaseController {
   private final ApplicationContext context;
   private final StopwatchManager stopwatchManager;
 
-  private final ExecutorService executor = Executors.newSingleThreadExecutor();
-
   public ReportController(
           ApplicationContext context,
           EventService eventService,
@@ -60,12 +55,6 @@ public class ReportController extends BaseController {
     this.stopwatchManager = stopwatchManager;
   }
 
-  @PreDestroy
-  public void shutdown() {
-    // needed to avoid resource leak
-    executor.shutdown();
-  }
-
   @InitBinder
   public void initBinder(WebDataBinder binder) {
     binder.setDisallowedFields(disallowedFields);
@@ -90,6 +79,8 @@ public class ReportController extends BaseController {
       );
       QueryConfig queryConfig = this.context.getBean(QueryConfig.class);
       IQuery query = QueryFactory.getQueryInstance(this.context, queryConfig.getQueryClass());
+      // Measure evaluation follows, so the patient data may be handed to it in memory
+      reportContext.setHandOffPatientData(true);
       query.execute(criteria, reportContext, patientsOfInterest, reportContext.getMasterIdentifier(), resourceTypes, measureId);
     } catch (Exception ex) {
       logger.error(String.format("Error scooping/storing data for the patients (%s)", StringUtils.join(patientsOfInterest, ", ")));
@@ -118,13 +109,10 @@ public class ReportController extends BaseController {
     Task task = TaskHelper.getNewTask(user, request, Constants.GENERATE_REPORT);
     FhirDataProvider fhirDataProvider = getFhirDataProvider();
     fhirDataProvider.updateResource(task);
-    Job job = new Job(task);
 
     generateReport.setTaskId(task.getId());
 
-    executor.submit(
-            () -> generateReport(generateReport)
-    );
+    Job job = submitJob(task, generateReport.getLocationId(), () -> generateReport(generateReport));
 
     return ResponseEntity.ok(job);
   }
@@ -315,10 +303,9 @@ public class ReportController extends BaseController {
 
     fhirDataProvider.updateResource(task);
 
-    // TODO thread it
-    publishReport(user, task.getId(), publisherType, reportId);
+    Job job = submitJob(task, null, () -> publishReport(user, task.getId(), publisherType, reportId));
 
-    return ResponseEntity.ok(new Job(task));
+    return ResponseEntity.ok(job);
   }
 
   private void publishReport(LinkCredentials user, String taskId, String publisherType, String reportId) {
@@ -336,11 +323,12 @@ public class ReportController extends BaseController {
       // TODO - find config from publishers by name
       PublisherOutcome outcome = new PublisherOutcome();
       if (publisherType.equals("fhir")) {
-        String publisherClassName = config.getPublishers().getFhir().getPublisher();
+        FhirPublisherConfig publisherConfig = config.getPublishers().getFhir();
+        String publisherClassName = publisherConfig.getPublisher();
         Class<?> publisherClass = Class.forName(publisherClassName);
         @SuppressWarnings("unchecked")
         IMeasureReportPublisher<FhirPublisherConfig> publisher = (IMeasureReportPublisher<FhirPublisherConfig>) context.getBean(publisherClass);
-        outcome = publisher.publish(config.getPublishers().getFhir(), measureReport);
+        outcome = publishWithRetries(publisher, publisherConfig, measureReport, task);
       } else {
         outcome.setSuccess(false);
         outcome.setMessage(
@@ -356,11 +344,11 @@ public class ReportController extends BaseController {
       } else {
         ApiUtility.addNoteToTask(
                 task,
-                String.format("MeasureReport failed to publish: %s", outcome.getPublishedLocation())
+                String.format("MeasureReport failed to publish: %s", outcome.getMessage())
         );
       }
 
-      task.setStatus(Task.TaskStatus.COMPLETED);
+      task.setStatus(outcome.isSuccess() ? Task.TaskStatus.COMPLETED : Task.TaskStatus.FAILED);
 
       this.getFhirDataProvider().audit(task,
               user.getJwt(),
@@ -381,6 +369,34 @@ public class ReportController extends BaseController {
 
   }
 
+  /**
+   * Publishes the report, attempting up to the configured number of times and waiting (with an exponential back-off)
+   * between failed attempts
+   */
+  private PublisherOutcome publishWithRetries(IMeasureReportPublisher<FhirPublisherConfig> publisher, FhirPublisherConfig publisherConfig, MeasureReport measureReport, Task task) throws InterruptedException {
+    int maxAttempts = Math.max(1, publisherConfig.getMaxAttempts());
+    long delay = publisherConfig.getRetryDelay();
+    PublisherOutcome outcome = null;
+
+    for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+      outcome = publisher.publish(publisherConfig, measureReport);
+
+      if (outcome.isSuccess() || attempt == maxAttempts) {
+        break;
+      }
+
+      logger.warn("Attempt {} of {} to publish MeasureReport {} failed, retrying in {}ms: {}", attempt, maxAttempts, measureReport.getIdElement().getIdPart(), delay, outcome.getMessage());
+      ApiUtility.addNoteToTask(
+              task,
+              String.format("Attempt %s of %s to publish MeasureReport failed: %s", attempt, maxAttempts, outcome.getMessage())
+      );
+      Thread.sleep(delay);
+      delay *= 2;
+    }
+
+    return outcome;
+  }
+
   // TODO - maybe add API endpoint to provide list of configured Publishers, otherwise one would
   // have to know the deployed configuration
 
@@ -27,7 +27,6 @@ import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.xml.datatype.DatatypeConfigurationException;
@@ -36,8 +35,6 @@ import javax.xml.datatype.Duration;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @RestController
@@ -45,9 +42,6 @@ import java.util.stream.Collectors;
 public class ReportDataController extends BaseController {
   private static final Logger logger = LoggerFactory.getLogger(ReportDataController.class);
 
-  // Instantiate an executor service
-  private final ExecutorService executor = Executors.newSingleThreadExecutor();
-
   @Autowired
   @Setter
   private ApplicationContext context;
@@ -64,11 +58,6 @@ public class ReportDataController extends BaseController {
   // Ex: DISALLOWED_FIELDS = new String[]{"details.role", "details.age", "is_admin"};
   final String[] DISALLOWED_FIELDS = new String[]{};
 
-  @PreDestroy
-  public void shutdown() {
-    // needed to avoid resource leak
-    executor.shutdown();
-  }
   @InitBinder
   public void initBinder(WebDataBinder binder) {
     binder.setDisallowedFields(DISALLOWED_FIELDS);
@@ -91,10 +80,9 @@ public class ReportDataController extends BaseController {
     Task task = TaskHelper.getNewTask(user, request, Constants.FILE_UPLOAD);
     FhirDataProvider fhirDataProvider = getFhirDataProvider();
     fhirDataProvider.updateResource(task);
-    Job job = new Job(task);
 
     // call processUploadFile
-    executor.submit(() -> processUploadFile(user, uploadFile, task.getId()));
+    Job job = submitJob(task, null, () -> processUploadFile(user, uploadFile, task.getId()));
 
     return ResponseEntity.ok(job);
   }
@@ -243,9 +231,8 @@ public class ReportDataController extends BaseController {
     Task task = TaskHelper.getNewTask(user, request, Constants.MANUAL_EXPUNGE);
     FhirDataProvider fhirDataProvider = getFhirDataProvider();
     fhirDataProvider.updateResource(task);
-    Job job = new Job(task);
 
-    executor.submit(() -> manualExpungeTask(user, request, resourcesToDelete,task.getId()));
+    Job job = submitJob(task, null, () -> manualExpungeTask(user, request, resourcesToDelete,task.getId()));
 
     return ResponseEntity.ok(job);
   }
@@ -344,9 +331,8 @@ public class ReportDataController extends BaseController {
     Task task = TaskHelper.getNewTask(user, request, Constants.EXPUNGE_TASK);
     FhirDataProvider fhirDataProvider = getFhirDataProvider();
     fhirDataProvider.updateResource(task);
-    Job job = new Job(task);
 
-    executor.submit(() -> expungeData(user, task.getId()));
+    Job job = submitJob(task, null, () -> expungeData(user, task.getId()));
 
     return ResponseEntity.ok(job);
   }
@@ -452,19 +438,20 @@ public class ReportDataController extends BaseController {
                                        @Valid @RequestBody ScoopData input,
                                        BindingResult bindingResult) {
 
+    // Verify payload
+    if (bindingResult.hasErrors()) {
+      String errorMessage = bindingResult.getAllErrors().stream()
+              .map(DefaultMessageSourceResolvable::getDefaultMessage)
+              .collect(Collectors.joining(", "));
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, errorMessage);
+    }
+
     Task task = TaskHelper.getNewTask(user, request, Constants.SCOOP_DATA);
     FhirDataProvider fhirDataProvider = getFhirDataProvider();
+    Job job;
 
     try {
 
-      // Verify payload
-      if (bindingResult.hasErrors()) {
-        String errorMessage = bindingResult.getAllErrors().stream()
-                .map(DefaultMessageSourceResolvable::getDefaultMessage)
-                .collect(Collectors.joining(", "));
-        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, errorMessage);
-      }
-
       // TODO: Remove the blank array list when we are DONE with bundleIds
       ReportCriteria criteria = new ReportCriteria(new ArrayList<>(), input.getLocationId(), input.getMeasureId(),input.getPeriodStart(), input.getPeriodEnd());
 
@@ -476,10 +463,13 @@ public class ReportDataController extends BaseController {
       fhirDataProvider.updateResource(task);
 
       // Scoop It
-      executor.submit(() -> scoopData(user, criteria, reportContext, task.getId()));
+      job = submitJob(task, input.getLocationId(), () -> scoopData(user, criteria, reportContext, task.getId()));
 
       this.getFhirDataProvider().audit(task, user.getJwt(), FhirHelper.AuditEventTypes.InitiateQuery, "Successfully Initiated Query");
 
+    } catch (ResponseStatusException ex) {
+      // i.e. the job queue is full (which submitJob records on the task), so that the client knows to try again later
+      throw ex;
     } catch (Exception ex) {
       String errorMessage = String.format("Issue with data scoop API call: %s", ex.getMessage());
       logger.error(errorMessage);
@@ -494,7 +484,7 @@ public class ReportDataController extends BaseController {
       fhirDataProvider.updateResource(task);
     }
 
-    return ResponseEntity.ok(new Job(task));
+    return ResponseEntity.ok(job);
   }
 
   private void scoopData(LinkCredentials user, ReportCriteria reportCriteria, ReportContext reportContext, String taskId) {
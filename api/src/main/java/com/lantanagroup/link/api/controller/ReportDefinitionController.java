@@ -2,6 +2,7 @@ package com.lantanagroup.link.api.controller;
 
 import com.lantanagroup.link.Constants;
 import com.lantanagroup.link.FhirDataProvider;
+import com.lantanagroup.link.FhirDataProviderRegistry;
 import com.lantanagroup.link.config.api.ApiConfig;
 import com.lantanagroup.link.model.StoredMeasure;
 import lombok.Setter;
@@ -38,7 +39,7 @@ public class ReportDefinitionController extends BaseController {
    */
   @GetMapping
   public List<StoredMeasure> getMeasures(Authentication authentication, HttpServletRequest request) throws Exception {
-    FhirDataProvider evaluationProvider = new FhirDataProvider(config.getEvaluationService());
+    FhirDataProvider evaluationProvider = FhirDataProviderRegistry.get(config.getEvaluationService());
 
     //FhirDataProvider fhirClient = this.getFhirDataProvider();
     //Bundle searchResults = fhirClient.searchBundleByTag(Constants.MainSystem, Constants.ReportDefinitionTag);
@@ -0,0 +1,123 @@
+package com.lantanagroup.link.api;
+
+import com.lantanagroup.link.config.api.ApiConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ReportJobSchedulerTests {
+  private ReportJobScheduler scheduler;
+
+  private ReportJobScheduler createScheduler(int jobWorkers, int jobQueueDepth) {
+    ApiConfig config = new ApiConfig();
+    config.setJobWorkers(jobWorkers);
+    config.setJobQueueDepth(jobQueueDepth);
+    this.scheduler = new ReportJobScheduler(config);
+    return this.scheduler;
+  }
+
+  @After
+  public void shutdown() {
+    if (this.scheduler != null) {
+      this.scheduler.shutdown();
+    }
+  }
+
+  private static Runnable await(CountDownLatch started, CountDownLatch release) {
+    return () -> {
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+
+  @Test
+  public void rejectsWhenQueueIsFullTest() throws InterruptedException {
+    ReportJobScheduler scheduler = this.createScheduler(1, 2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    try {
+      // The running job is no longer waiting, and so does not count towards the queue depth
+      scheduler.submit("job1", null, await(started, release));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      Assert.assertNull(scheduler.getQueuePosition("job1"));
+
+      Assert.assertEquals(1, scheduler.submit("job2", null, () -> { }));
+      Assert.assertEquals(2, scheduler.submit("job3", null, () -> { }));
+      Assert.assertEquals(Integer.valueOf(2), scheduler.getQueuePosition("job3"));
+
+      try {
+        scheduler.submit("job4", null, () -> { });
+        Assert.fail("Expected the job to be rejected when the queue is full");
+      } catch (RejectedExecutionException ignored) {
+      }
+      Assert.assertNull(scheduler.getQueuePosition("job4"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void runsJobsForLocationInOrderTest() throws InterruptedException {
+    ReportJobScheduler scheduler = this.createScheduler(4, 100);
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(1);
+
+    for (int i = 0; i < 10; i++) {
+      int index = i;
+      scheduler.submit("job" + i, "location1", () -> {
+        try {
+          Thread.sleep((10 - index) % 3);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        completed.add(index);
+
+        // A job that fails outright does not stop the jobs queued behind it
+        if (index == 4) {
+          throw new Error("Job failed");
+        }
+      });
+    }
+    scheduler.submit("last", "location1", done::countDown);
+
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), completed);
+    Assert.assertNull(scheduler.getQueuePosition("last"));
+  }
+
+  @Test
+  public void runsJobsForOtherLocationsConcurrentlyTest() throws InterruptedException {
+    ReportJobScheduler scheduler = this.createScheduler(2, 100);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherLocationDone = new CountDownLatch(1);
+
+    try {
+      scheduler.submit("job1", "location1", await(started, release));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      // The second job for location1 waits for the first, but location2's job does not
+      scheduler.submit("job2", "location1", () -> { });
+      scheduler.submit("job3", "location2", otherLocationDone::countDown);
+
+      Assert.assertTrue(otherLocationDone.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(Integer.valueOf(1), scheduler.getQueuePosition("job2"));
+    } finally {
+      release.countDown();
+    }
+  }
+}
@@ -2,7 +2,9 @@ package com.lantanagroup.link.api.controller;
 
 import com.lantanagroup.link.Constants;
 import com.lantanagroup.link.FhirDataProvider;
+import com.lantanagroup.link.api.ReportJobScheduler;
 import com.lantanagroup.link.auth.LinkCredentials;
+import com.lantanagroup.link.config.api.ApiConfig;
 import com.lantanagroup.link.config.datagovernance.DataGovernanceConfig;
 import com.lantanagroup.link.model.UploadFile;
 import org.hl7.fhir.r4.model.Bundle;
@@ -46,6 +48,7 @@ public class ReportDataControllerTest {
   public void expungeDataTest() {
     ReportDataController reportDataController = new ReportDataController();
     reportDataController.setFhirStoreProvider(mock(FhirDataProvider.class));
+    reportDataController.setJobScheduler(new ReportJobScheduler(new ApiConfig()));
     reportDataController.setDataGovernanceConfig(new DataGovernanceConfig());
     reportDataController.getDataGovernanceConfig().setCensusListRetention("PT4H");
     reportDataController.getDataGovernanceConfig().setPatientDataRetention("PT4H");
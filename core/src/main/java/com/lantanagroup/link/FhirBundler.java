@@ -223,6 +223,7 @@ public class FhirBundler {
     }
 
     private String getIdPart(IBaseResource resource) {
-        return resource.getIdElement().getIdPart().replaceAll("^#", "");
+        String idPart = resource.getIdElement().getIdPart();
+        return idPart.startsWith("#") ? idPart.substring(1) : idPart;
     }
 }
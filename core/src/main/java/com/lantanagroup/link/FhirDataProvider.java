@@ -11,11 +11,9 @@ import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
-import ca.uhn.fhir.rest.client.interceptor.BasicAuthInterceptor;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.lantanagroup.link.config.api.ApiDataStoreConfig;
 import lombok.Getter;
-import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
@@ -35,27 +33,12 @@ public class FhirDataProvider {
     this.client = client;
   }
 
+  /**
+   * Uses the client shared with other providers for the data store (see FhirDataProviderRegistry), which applies the
+   * configured timeouts to its own client factory rather than the shared FhirContext
+   */
   public FhirDataProvider(ApiDataStoreConfig config) {
-
-    if (StringUtils.isNotEmpty(config.getSocketTimeout())) {
-      this.ctx.getRestfulClientFactory().setSocketTimeout(Integer.parseInt(config.getSocketTimeout()));
-    }
-
-    if (StringUtils.isNotEmpty(config.getConnectionTimeout())) {
-      ctx.getRestfulClientFactory().setConnectTimeout(Integer.parseInt(config.getConnectionTimeout()));
-    }
-
-    if (StringUtils.isNotEmpty(config.getConnectionRequestTimeout())) {
-      ctx.getRestfulClientFactory().setConnectionRequestTimeout(Integer.parseInt(config.getConnectionRequestTimeout()));
-    }
-
-    IGenericClient newClient = this.ctx.newRestfulGenericClient(config.getBaseUrl());
-
-    if (StringUtils.isNotEmpty(config.getUsername()) && StringUtils.isNotEmpty(config.getPassword())) {
-      BasicAuthInterceptor authInterceptor = new BasicAuthInterceptor(config.getUsername(), config.getPassword());
-      newClient.registerInterceptor(authInterceptor);
-    }
-    this.client = newClient;
+    this.client = FhirDataProviderRegistry.get(config).getClient();
   }
 
   public FhirDataProvider(String fhirBase) {
@@ -104,6 +87,27 @@ public class FhirDataProvider {
     return outcome;
   }
 
+  /**
+   * Creates or updates each of the resources, sending them to the server as batches of at most
+   * <code>batchSize</code> resources rather than one request per resource
+   *
+   * @param resources The resources to create/update, each of which must have an id
+   * @param batchSize The maximum number of resources in each batch
+   */
+  public void updateResources(List<? extends DomainResource> resources, int batchSize) {
+    for (int start = 0; start < resources.size(); start += batchSize) {
+      List<DomainResource> batch = new ArrayList<>(resources.subList(start, Math.min(start + batchSize, resources.size())));
+      logger.debug("Storing {} resources in a batch", batch.size());
+      Bundle response = this.transaction(FhirHelper.createUpdateBatch(batch));
+
+      if (response != null) {
+        response.getEntry().stream()
+                .filter(entry -> entry.getResponse().getStatus() != null && !entry.getResponse().getStatus().startsWith("2"))
+                .forEach(entry -> logger.error("Failed to store resource {}: {}", entry.getResponse().getLocation(), entry.getResponse().getStatus()));
+      }
+    }
+  }
+
   public DocumentReference findDocRefForReport(String reportId) {
     Bundle bundle = this.client
             .search()
@@ -0,0 +1,141 @@
+package com.lantanagroup.link;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
+import ca.uhn.fhir.rest.client.interceptor.BasicAuthInterceptor;
+import com.lantanagroup.link.config.api.ApiConfig;
+import com.lantanagroup.link.config.api.ApiDataStoreConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out FhirDataProvider instances that are shared by every caller using the same FHIR server and credentials,
+ * rather than each caller creating its own client. The clients for each host share a single pooled connection
+ * manager, so that consecutive requests (i.e. the $evaluate-measure request for each patient) re-use open connections.
+ * Timeouts are set on the client factory of each host and set of timeouts, never on the shared FhirContext, so that
+ * the timeouts of one provider do not change those of another.
+ */
+public class FhirDataProviderRegistry {
+  private static final Logger logger = LoggerFactory.getLogger(FhirDataProviderRegistry.class);
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+  private static final Map<String, FhirDataProvider> providers = new ConcurrentHashMap<>();
+  private static final Map<String, IRestfulClientFactory> clientFactories = new ConcurrentHashMap<>();
+  private static volatile int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  // Null to use the server validation mode of the shared FhirContext's factory
+  private static volatile ServerValidationModeEnum serverValidationMode;
+
+  private FhirDataProviderRegistry() {
+    throw new IllegalStateException("Utility class");
+  }
+
+  /**
+   * Applies the api.max-connections-per-fhir-host and api.validate-fhir-server settings to the client factories. Also
+   * applies them to any factory created before the configuration was loaded (i.e. by a bean created before ApiInit),
+   * so that the settings do not depend on the order in which the application is initialized.
+   */
+  public static synchronized void configure(ApiConfig config) {
+    maxConnectionsPerHost = config.getMaxConnectionsPerFhirHost() != null && config.getMaxConnectionsPerFhirHost() > 0 ?
+            config.getMaxConnectionsPerFhirHost() : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    serverValidationMode = Boolean.FALSE.equals(config.getValidateFhirServer()) ? ServerValidationModeEnum.NEVER : null;
+
+    clientFactories.values().forEach(FhirDataProviderRegistry::applySettings);
+  }
+
+  private static void applySettings(IRestfulClientFactory factory) {
+    factory.setServerValidationMode(serverValidationMode != null ?
+            serverValidationMode : FhirContextProvider.getFhirContext().getRestfulClientFactory().getServerValidationMode());
+
+    // Changing the pool size replaces the factory's pool, so only do so when it has changed
+    if (factory.getPoolMaxTotal() != maxConnectionsPerHost || factory.getPoolMaxPerRoute() != maxConnectionsPerHost) {
+      applySettings(factory);
+    }
+  }
+
+  /**
+   * @return The shared provider for the data store, authenticating with the configured username and password
+   */
+  public static FhirDataProvider get(ApiDataStoreConfig config) {
+    String key = String.join("|", config.getBaseUrl(), StringUtils.defaultString(config.getUsername()),
+            StringUtils.defaultString(config.getPassword()), StringUtils.defaultString(config.getSocketTimeout()),
+            StringUtils.defaultString(config.getConnectionTimeout()), StringUtils.defaultString(config.getConnectionRequestTimeout()));
+
+    return providers.computeIfAbsent(key, k -> {
+      IRestfulClientFactory clientFactory = getClientFactory(config.getBaseUrl(), config.getSocketTimeout(),
+              config.getConnectionTimeout(), config.getConnectionRequestTimeout());
+      IGenericClient client = clientFactory.newGenericClient(config.getBaseUrl());
+
+      if (StringUtils.isNotEmpty(config.getUsername()) && StringUtils.isNotEmpty(config.getPassword())) {
+        client.registerInterceptor(new BasicAuthInterceptor(config.getUsername(), config.getPassword()));
+      }
+
+      return new FhirDataProvider(client);
+    });
+  }
+
+  /**
+   * @return The shared provider for the (unauthenticated) FHIR server, such as the evaluation service
+   */
+  public static FhirDataProvider get(String fhirBase) {
+    return get(fhirBase, null);
+  }
+
+  /**
+   * @param socketTimeout The socket timeout (in milliseconds) for requests made by the provider, or null to use the
+   *                      default. Allows slow requests (i.e. $evaluate-measure) to wait longer than other requests to
+   *                      the same server.
+   * @return The shared provider for the (unauthenticated) FHIR server with the specified socket timeout
+   */
+  public static FhirDataProvider get(String fhirBase, String socketTimeout) {
+    String key = String.join("|", fhirBase, StringUtils.defaultString(socketTimeout));
+
+    return providers.computeIfAbsent(key, k -> {
+      IGenericClient client = getClientFactory(fhirBase, socketTimeout, null, null).newGenericClient(fhirBase);
+      client.registerInterceptor(new GZipContentInterceptor());
+      return new FhirDataProvider(client);
+    });
+  }
+
+  private static String getHost(String fhirBase) {
+    try {
+      URI uri = URI.create(fhirBase);
+      return uri.getScheme() + "://" + uri.getAuthority();
+    } catch (IllegalArgumentException ex) {
+      return fhirBase;
+    }
+  }
+
+  /**
+   * Gets the client factory for the host of the FHIR server, which holds the pool of connections to the host. The
+   * factory uses the specified timeouts, falling back to those of the shared FhirContext's factory, along with the
+   * configured pool size and server validation mode.
+   */
+  static synchronized IRestfulClientFactory getClientFactory(String fhirBase, String socketTimeout, String connectTimeout, String connectionRequestTimeout) {
+    String key = String.join("|", getHost(fhirBase), StringUtils.defaultString(socketTimeout),
+            StringUtils.defaultString(connectTimeout), StringUtils.defaultString(connectionRequestTimeout));
+
+    return clientFactories.computeIfAbsent(key, k -> {
+      FhirContext ctx = FhirContextProvider.getFhirContext();
+      IRestfulClientFactory defaults = ctx.getRestfulClientFactory();
+      ApacheRestfulClientFactory factory = new ApacheRestfulClientFactory(ctx);
+
+      factory.setSocketTimeout(StringUtils.isNotEmpty(socketTimeout) ? Integer.parseInt(socketTimeout) : defaults.getSocketTimeout());
+      factory.setConnectTimeout(StringUtils.isNotEmpty(connectTimeout) ? Integer.parseInt(connectTimeout) : defaults.getConnectTimeout());
+      factory.setConnectionRequestTimeout(StringUtils.isNotEmpty(connectionRequestTimeout) ? Integer.parseInt(connectionRequestTimeout) : defaults.getConnectionRequestTimeout());
+      factory.setPoolMaxTotal(maxConnectionsPerHost);
+      factory.setPoolMaxPerRoute(maxConnectionsPerHost);
+
+      logger.info("Pooling up to {} connections to {}", maxConnectionsPerHost, getHost(fhirBase));
+      return factory;
+    });
+  }
+}
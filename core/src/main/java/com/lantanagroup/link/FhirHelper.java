@@ -24,6 +24,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 
@@ -31,8 +39,41 @@ public class FhirHelper {
   private static final Logger logger = LoggerFactory.getLogger(FhirHelper.class);
   private static final String NAME = "name";
   private static final String SUBJECT = "sub";
+  private static final String PAGES_OFFSET = "_getpagesoffset";
+  private static final Pattern PAGES_OFFSET_PATTERN = Pattern.compile("([?&])" + PAGES_OFFSET + "=(\\d+)");
+  private static final Pattern COUNT_PATTERN = Pattern.compile("([?&])_count=(\\d+)");
+  public static final int DEFAULT_PARALLEL_PAGE_REQUESTS = 4;
+
+  private static volatile int parallelPageRequests = DEFAULT_PARALLEL_PAGE_REQUESTS;
+  // Shared by every request for pages, so that the threads are re-used and at most parallelPageRequests run at once
+  private static ExecutorService pageExecutor;
   //private static final String DOCUMENT_REFERENCE_VERSION_URL = "https://www.cdc.gov/nhsn/fhir/nhsnlink/StructureDefinition/nhsnlink-report-version";
 
+  /**
+   * Sets the maximum number of pages of search results requested at the same time. Null resets the default.
+   */
+  public static synchronized void setParallelPageRequests(Integer parallelRequests) {
+    parallelPageRequests = parallelRequests != null && parallelRequests > 0 ? parallelRequests : DEFAULT_PARALLEL_PAGE_REQUESTS;
+
+    // Requests already running on the previous threads finish, later requests use a pool of the new size
+    if (pageExecutor != null) {
+      pageExecutor.shutdown();
+      pageExecutor = null;
+    }
+  }
+
+  private static synchronized ExecutorService getPageExecutor() {
+    if (pageExecutor == null) {
+      AtomicInteger threadCount = new AtomicInteger();
+      pageExecutor = Executors.newFixedThreadPool(parallelPageRequests, runnable -> {
+        Thread thread = new Thread(runnable, "fhir-page-request-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return pageExecutor;
+  }
+
   public static void recordAuditEvent(Task jobTask, FhirDataProvider fhirDataProvider, DecodedJWT jwt, AuditEventTypes type, String outcomeDescription) {
     AuditEvent auditEvent = createAuditEvent(jobTask, jwt, type, outcomeDescription);
 
@@ -218,6 +259,18 @@ public class FhirHelper {
   public static <T extends IBaseResource> List<T> getAllPages(Bundle bundle, FhirDataProvider fhirDataProvider, FhirContext ctx, Class<T> resourceType) {
     List<T> resources = new ArrayList<>(BundleUtil.toListOfResourcesOfType(ctx, bundle, resourceType));
 
+    List<Bundle> pages = getRemainingPagesInParallel(bundle, fhirDataProvider);
+    if (pages != null) {
+      for (Bundle page : pages) {
+        resources.addAll(BundleUtil.toListOfResourcesOfType(ctx, page, resourceType));
+      }
+      if (pages.isEmpty()) {
+        return resources;
+      }
+      // Pick up any pages beyond the total reported by the first page (i.e. resources created while paging)
+      bundle = pages.get(pages.size() - 1);
+    }
+
     // Load the subsequent pages
     while (bundle.getLink(IBaseBundle.LINK_NEXT) != null) {
       bundle = fhirDataProvider
@@ -231,6 +284,77 @@ public class FhirHelper {
     return resources;
   }
 
+  /**
+   * When the next link of the first page is an offset into the search results (i.e. HAPI's <code>_getpagesoffset</code>)
+   * and the first page reports the total number of results, requests the remaining pages at the same time (at most
+   * <code>api.parallel-page-requests</code> at once, across all callers) rather than following each page's next link
+   * in turn.
+   *
+   * @return The remaining pages in order, or null if the pages could not be requested in parallel and should be
+   * requested one after another
+   */
+  private static List<Bundle> getRemainingPagesInParallel(Bundle bundle, FhirDataProvider fhirDataProvider) {
+    Bundle.BundleLinkComponent next = bundle.getLink(IBaseBundle.LINK_NEXT);
+    if (next == null || !next.hasUrl() || !bundle.hasTotal()) {
+      return next == null ? Collections.emptyList() : null;
+    }
+
+    String nextUrl = next.getUrl();
+    Matcher offsetMatcher = PAGES_OFFSET_PATTERN.matcher(nextUrl);
+    Matcher countMatcher = COUNT_PATTERN.matcher(nextUrl);
+    if (!offsetMatcher.find() || !countMatcher.find()) {
+      return null;
+    }
+
+    int firstOffset = Integer.parseInt(offsetMatcher.group(2));
+    int count = Integer.parseInt(countMatcher.group(2));
+    if (count <= 0) {
+      return null;
+    }
+
+    List<String> pageUrls = new ArrayList<>();
+    for (int offset = firstOffset; offset < bundle.getTotal(); offset += count) {
+      pageUrls.add(offsetMatcher.replaceFirst("$1" + PAGES_OFFSET + "=" + offset));
+    }
+    if (pageUrls.size() <= 1) {
+      return null;
+    }
+
+    // Each worker requests the next page that has not been requested yet, so that a single search only queues as
+    // many tasks as it may run at once
+    int workers = Math.min(pageUrls.size(), parallelPageRequests);
+    Bundle[] pages = new Bundle[pageUrls.size()];
+    AtomicInteger nextPage = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>();
+
+    logger.info("Requesting {} pages of resources, {} at a time", pageUrls.size(), workers);
+    try {
+      ExecutorService executor = getPageExecutor();
+      for (int i = 0; i < workers; i++) {
+        futures.add(executor.submit(() -> {
+          int page;
+          while ((page = nextPage.getAndIncrement()) < pageUrls.size()) {
+            pages[page] = fhirDataProvider.fetchResourceFromUrl(pageUrls.get(page));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      return Arrays.asList(pages);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while requesting pages of resources", ex);
+    } catch (ExecutionException | RejectedExecutionException ex) {
+      logger.warn("Failed to request pages of resources in parallel, requesting them one at a time: {}",
+              ex instanceof ExecutionException ? ex.getCause().getMessage() : ex.getMessage());
+      return null;
+    } finally {
+      // Stop requesting the remaining pages if any of them failed
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
   public static List<IBaseResource> getAllPages(Bundle bundle, FhirDataProvider fhirDataProvider, FhirContext ctx) {
     return getAllPages(bundle, fhirDataProvider, ctx, IBaseResource.class);
   }
@@ -256,36 +380,44 @@ public class FhirHelper {
     return report;
   }
 
+  /**
+   * Adds the resources in the source bundle to the destination bundle as PUT requests, skipping any resource whose
+   * type and id is already in the destination bundle
+   */
   public static void addEntriesToBundle(Bundle source, Bundle destination) {
     if (source == null) return;
 
-    List<Bundle.BundleEntryComponent> sourceEntries = source.getEntry();
+    // Index the resources already in the destination once, rather than searching it for each source entry
+    Set<String> existing = new HashSet<>();
+    for (Bundle.BundleEntryComponent destEntry : destination.getEntry()) {
+      if (destEntry.getResource() != null && destEntry.getResource().getId() != null) {
+        existing.add(getResourceKey(destEntry.getResource()));
+      }
+    }
 
-    for (Bundle.BundleEntryComponent sourceEntry : sourceEntries) {
+    for (Bundle.BundleEntryComponent sourceEntry : source.getEntry()) {
       if (sourceEntry.getResource() == null || sourceEntry.getResource().getIdElement() == null || sourceEntry.getResource().getId() == null)
         continue;
 
-      List<Bundle.BundleEntryComponent> destEntries = new ArrayList<>(destination.getEntry());
-      Optional<Bundle.BundleEntryComponent> found =
-              destEntries.stream()
-                      .filter(n ->
-                              n.getResource().getResourceType() == sourceEntry.getResource().getResourceType() &&
-                                      n.getResource().getIdElement().getIdPart() == sourceEntry.getResource().getIdElement().getIdPart())
-                      .findFirst();
+      String key = getResourceKey(sourceEntry.getResource());
 
       // Only add the resource to the bundle if it doesn't already exist
-      if (found.isPresent()) {
-        logger.debug(String.format("Resource %s/%s is a duplicate, skipping...", sourceEntry.getResource().getResourceType(), sourceEntry.getResource().getIdElement().getIdPart()));
+      if (!existing.add(key)) {
+        logger.debug(String.format("Resource %s is a duplicate, skipping...", key));
       } else {
         destination.addEntry()
                 .setResource(sourceEntry.getResource())
                 .getRequest()
                 .setMethod(Bundle.HTTPVerb.PUT)
-                .setUrl(sourceEntry.getResource().getResourceType().toString() + "/" + sourceEntry.getResource().getIdElement().getIdPart());
+                .setUrl(key);
       }
     }
   }
 
+  private static String getResourceKey(Resource resource) {
+    return resource.getResourceType().toString() + "/" + resource.getIdElement().getIdPart();
+  }
+
   public static Bundle.BundleEntryComponent findEntry(Bundle bundle, ResourceType resourceType, String id) {
     Optional<Bundle.BundleEntryComponent> found = bundle.getEntry().stream().filter(e ->
                     e.getResource().getResourceType() == resourceType &&
@@ -355,6 +487,7 @@ public class FhirHelper {
               .getRequest()
               .setMethod(Bundle.HTTPVerb.PUT)
               .setUrl(resource.getResourceType().toString() + "/" + resource.getIdElement().getIdPart());
+      newBundle.addEntry(newEntry);
     }
 
     return newBundle;
@@ -79,7 +79,7 @@ public abstract class GenericAggregator implements IReportAggregator {
     //Get version info for measure and LINK and store as extensions in master measure report
     try {
 
-      FhirDataProvider fhirStoreProvider = new FhirDataProvider(this.usCoreConfig.getFhirServerBase());
+      FhirDataProvider fhirStoreProvider = FhirDataProviderRegistry.get(this.usCoreConfig.getFhirServerBase());
       String measureId = measureContext.getMeasure().getId();
       Bundle measureBundle = (Bundle) fhirStoreProvider
               .getResourceByTypeAndId("Bundle", measureId.substring(measureId.indexOf("/") + 1));
@@ -35,6 +35,21 @@ public class MeasureEvaluator {
         return evaluator.generateMeasureReport();
     }
 
+    /**
+     * Gets the patient's data bundle from the report context if the query handed it off in memory, otherwise from the
+     * data store
+     */
+    private Bundle getPatientBundle(String patientDataBundleId) {
+        Bundle handedOff = this.reportContext.removePatientDataBundle(patientDataBundleId);
+
+        if (handedOff != null) {
+            return handedOff;
+        }
+
+        FhirDataProvider fhirStoreProvider = FhirDataProviderRegistry.get(this.config.getDataStore());
+        return fhirStoreProvider.getBundleById(patientDataBundleId);
+    }
+
     private MeasureReport generateMeasureReport() {
         MeasureReport measureReport;
         String patientDataBundleId = ReportIdHelper.getPatientDataBundleId(reportContext.getMasterIdentifier(), patientId);
@@ -43,9 +58,8 @@ public class MeasureEvaluator {
             String measureId = this.measureContext.getMeasure().getIdElement().getIdPart();
             logger.info(String.format("Executing $evaluate-measure for %s", measureId));
 
-            // get patient bundle from the fhirserver
-            FhirDataProvider fhirStoreProvider = new FhirDataProvider(this.config.getDataStore());
-            IBaseResource patientBundle = fhirStoreProvider.getBundleById(patientDataBundleId);
+            // get patient bundle handed off by the query, or from the fhirserver
+            IBaseResource patientBundle = this.getPatientBundle(patientDataBundleId);
 
             // TODO - remove this is for debug
             if (patientBundle == null) {
@@ -69,7 +83,7 @@ public class MeasureEvaluator {
             logger.info(String.format("Evaluating measure for patient %s and measure %s", patientId, measureId));
             Date measureEvalStartTime = new Date();
 
-            FhirDataProvider fhirDataProvider = new FhirDataProvider(this.config.getEvaluationService());
+            FhirDataProvider fhirDataProvider = FhirDataProviderRegistry.get(this.config.getEvaluationService(), this.config.getEvaluationServiceSocketTimeout());
             Stopwatch stopwatch = this.stopwatchManager.start("evaluate-measure");
             measureReport = fhirDataProvider.getMeasureReport(measureId, parameters);
             stopwatch.stop();
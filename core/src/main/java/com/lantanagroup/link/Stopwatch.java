@@ -31,12 +31,9 @@ public class Stopwatch {
         String duration = DurationFormatUtils.formatDurationHMS(millis);
         logger.debug("{} --- [{}]", duration, name);
 
-        if (!this.manager.getCategories().containsKey(this.name)) {
-            ConcurrentLinkedQueue<Long> list = new ConcurrentLinkedQueue<Long>();
-            list.add(millis);
-            this.manager.getCategories().put(this.name, list);
-        } else {
-            this.manager.getCategories().get(this.name).add(millis);
-        }
+        // Stopwatches for the same category are stopped concurrently by patient workers
+        this.manager.getCategories()
+                .computeIfAbsent(this.name, k -> new ConcurrentLinkedQueue<>())
+                .add(millis);
     }
 }
@@ -13,7 +13,7 @@ public class StopwatchManager {
 
     private ConcurrentHashMap<String, ConcurrentLinkedQueue<Long>> categories = new ConcurrentHashMap<>();
 
-    public synchronized Stopwatch start(String name) {
+    public Stopwatch start(String name) {
         return new Stopwatch(this, name);
     }
 
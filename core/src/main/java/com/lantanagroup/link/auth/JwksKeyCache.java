@@ -0,0 +1,146 @@
+package com.lantanagroup.link.auth;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.JwkException;
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwk.UrlJwkProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds on to the keys published by an issuer's JWKS endpoint, indexed by key id, so that verifying a token does not
+ * require downloading the JWKS. The keys are re-downloaded once they are older than the cache duration, or when a
+ * token is signed with a key id that is not known, at most once per refresh interval.
+ */
+public class JwksKeyCache {
+  private static final Logger logger = LoggerFactory.getLogger(JwksKeyCache.class);
+  private static final Map<String, JwksKeyCache> caches = new ConcurrentHashMap<>();
+  private static final int CONNECT_TIMEOUT = 5000;
+  private static final int READ_TIMEOUT = 5000;
+
+  public static final Duration DEFAULT_CACHE_DURATION = Duration.ofHours(1);
+  public static final Duration MIN_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+  private static volatile Duration cacheDuration = DEFAULT_CACHE_DURATION;
+
+  private final String jwksUrl;
+  private final UrlJwkProvider provider;
+  private volatile Map<String, Jwk> keys = Collections.emptyMap();
+  private volatile Instant fetchedAt = Instant.MIN;
+  private volatile Instant attemptedAt = Instant.MIN;
+
+  private JwksKeyCache(String jwksUrl) throws MalformedURLException {
+    this.jwksUrl = jwksUrl;
+    this.provider = new UrlJwkProvider(new URL(jwksUrl), CONNECT_TIMEOUT, READ_TIMEOUT);
+  }
+
+  /**
+   * @return The key cache for the specified JWKS url, shared by every caller that verifies tokens against it
+   */
+  public static JwksKeyCache forUrl(String jwksUrl) throws MalformedURLException {
+    JwksKeyCache cache = caches.get(jwksUrl);
+    if (cache == null) {
+      JwksKeyCache created = new JwksKeyCache(jwksUrl);
+      cache = caches.putIfAbsent(jwksUrl, created);
+      if (cache == null) {
+        cache = created;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Sets how long downloaded keys are used before they are downloaded again. Null resets the default.
+   */
+  public static void setCacheDuration(Duration duration) {
+    cacheDuration = duration != null ? duration : DEFAULT_CACHE_DURATION;
+  }
+
+  /**
+   * Gets the key with the specified id, downloading the JWKS if the cached keys have expired or if the key id is not
+   * one of them.
+   *
+   * @param keyId The key id ("kid") from the header of the token
+   * @return The key
+   * @throws SigningKeyNotFoundException if the token does not specify a key id, or the issuer does not publish a key
+   *                                     with the specified id
+   */
+  public Jwk getKey(String keyId) throws JwkException {
+    if (keyId == null) {
+      throw new SigningKeyNotFoundException("Token does not specify a key id", null);
+    }
+
+    if (this.isExpired()) {
+      this.refresh(false);
+    }
+
+    Jwk jwk = this.findKey(keyId);
+    if (jwk == null && this.refresh(true)) {
+      jwk = this.findKey(keyId);
+    }
+
+    if (jwk == null) {
+      throw new SigningKeyNotFoundException("No key found in " + this.jwksUrl + " with kid " + keyId, null);
+    }
+
+    return jwk;
+  }
+
+  private Jwk findKey(String keyId) {
+    return this.keys.get(keyId);
+  }
+
+  private boolean isExpired() {
+    return Instant.now().isAfter(this.fetchedAt.plus(cacheDuration));
+  }
+
+  /**
+   * Downloads the JWKS, unless another thread has just done so or (for an unknown key id) the JWKS was last
+   * requested within the minimum refresh interval. When the download fails, the keys that were previously
+   * downloaded continue to be used.
+   *
+   * @param unknownKey Whether the refresh is for a key id that is not cached, rather than because the keys expired
+   * @return Whether the keys may have changed since the caller looked for its key
+   */
+  private synchronized boolean refresh(boolean unknownKey) throws JwkException {
+    Instant now = Instant.now();
+
+    if (!unknownKey && !this.isExpired()) {
+      return true;
+    }
+
+    if (now.isBefore(this.attemptedAt.plus(MIN_REFRESH_INTERVAL))) {
+      return !unknownKey;
+    }
+
+    this.attemptedAt = now;
+
+    try {
+      List<Jwk> jwks = this.provider.getAll();
+      Map<String, Jwk> downloaded = new HashMap<>();
+      for (Jwk jwk : jwks) {
+        downloaded.put(jwk.getId(), jwk);
+      }
+      this.keys = downloaded;
+      this.fetchedAt = now;
+      logger.debug("Cached {} keys from {}", downloaded.size(), this.jwksUrl);
+      return true;
+    } catch (JwkException ex) {
+      if (this.keys.isEmpty()) {
+        throw ex;
+      }
+      logger.warn("Failed to refresh keys from {}, continuing to use the previously retrieved keys: {}", this.jwksUrl, ex.getMessage());
+      return false;
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package com.lantanagroup.link.auth;
 
 import com.auth0.jwk.Jwk;
-import com.auth0.jwk.JwkException;
 import com.auth0.jwk.SigningKeyNotFoundException;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
@@ -9,10 +8,6 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import com.lantanagroup.link.Constants;
 import com.lantanagroup.link.config.auth.LinkOAuthConfig;
 import com.lantanagroup.link.model.CernerClaimData;
@@ -29,23 +24,26 @@ import org.slf4j.LoggerFactory;
 import javax.naming.AuthenticationException;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.security.interfaces.RSAPublicKey;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 public class OAuth2Helper {
   private static final Logger logger = LoggerFactory.getLogger(OAuth2Helper.class);
-  private final static ObjectReader reader = (new ObjectMapper()).readerFor(Map.class);
-  @VisibleForTesting
-  static URL url;
-  private static HashMap<String, String> issuerJwksUrls = new HashMap<>();
-  private static Integer connectTimeout;
-  private static Integer readTimeout;
+  // Every request for an issuer waits on its discovery, so an issuer that does not respond must not hold them forever
+  private static final int DISCOVERY_CONNECT_TIMEOUT = 5000;
+  private static final int DISCOVERY_READ_TIMEOUT = 5000;
+
+  /**
+   * The JWKS url of each issuer, discovered from the issuer's OpenID configuration. Concurrent requests for the same
+   * issuer wait on the same discovery rather than each requesting the OpenID configuration.
+   */
+  private static final ConcurrentHashMap<String, CompletableFuture<String>> issuerJwksUrls = new ConcurrentHashMap<>();
 
   //token algorithms
   public static enum TokenAlgorithmsEnum {
@@ -261,89 +259,6 @@ public class OAuth2Helper {
     }
   }
 
-  private static Map<String, Object> getJwks() throws SigningKeyNotFoundException {
-    try {
-      URLConnection c = url.openConnection();
-      if (connectTimeout != null) {
-        c.setConnectTimeout(connectTimeout);
-      }
-
-      if (readTimeout != null) {
-        c.setReadTimeout(readTimeout);
-      }
-
-      c.setRequestProperty("Accept", "application/json");
-      InputStream inputStream = c.getInputStream();
-      Throwable var3 = null;
-
-      Map<String, Object> var4;
-      try {
-        var4 = (Map) reader.readValue(inputStream);
-      } catch (Throwable var14) {
-        var3 = var14;
-        throw var14;
-      } finally {
-        if (inputStream != null) {
-          if (var3 != null) {
-            try {
-              inputStream.close();
-            } catch (Throwable var13) {
-              var3.addSuppressed(var13);
-            }
-          } else {
-            inputStream.close();
-          }
-        }
-
-      }
-
-      return var4;
-    } catch (IOException var16) {
-      throw new SigningKeyNotFoundException("Cannot obtain jwks from url " + url.toString(), var16);
-    }
-  }
-
-  private static List<Jwk> getAll() throws SigningKeyNotFoundException {
-    List<Jwk> jwks = Lists.newArrayList();
-    List<Map<String, Object>> keys = (List) getJwks().get("keys");
-    if (keys != null && !keys.isEmpty()) {
-      try {
-        Iterator<Map<String, Object>> var3 = keys.iterator();
-
-        while (var3.hasNext()) {
-          Map<String, Object> values = (Map) var3.next();
-          jwks.add(Jwk.fromValues(values));
-        }
-
-        return jwks;
-      } catch (IllegalArgumentException var5) {
-        throw new SigningKeyNotFoundException("Failed to parse jwk from json", var5);
-      }
-    } else {
-      throw new SigningKeyNotFoundException("No keys found in " + url.toString(), (Throwable) null);
-    }
-  }
-
-  private static Jwk get(String keyId) throws JwkException {
-    List<Jwk> jwks = getAll();
-    if (keyId == null && jwks.size() == 1) {
-      return jwks.get(0);
-    } else {
-      if (keyId != null) {
-        Iterator<Jwk> var3 = jwks.iterator();
-
-        while (var3.hasNext()) {
-          Jwk jwk = var3.next();
-          if (keyId.equals(jwk.getId())) {
-            return jwk;
-          }
-        }
-      }
-
-      throw new SigningKeyNotFoundException("No key found in " + url.toString() + " with kid " + keyId, (Throwable) null);
-    }
-  }
-
   private static CernerClaimData getCernerClaimData(DecodedJWT jwt) {
     Claim cernerClaim = jwt.getClaim("urn:cerner:authorization:claims:version:1");
 
@@ -366,6 +281,8 @@ public class OAuth2Helper {
       URL url = new URL(openIdConfigUrl);
       HttpURLConnection conn = (HttpURLConnection) url.openConnection();
       conn.setRequestMethod("GET");
+      conn.setConnectTimeout(DISCOVERY_CONNECT_TIMEOUT);
+      conn.setReadTimeout(DISCOVERY_READ_TIMEOUT);
       int status = conn.getResponseCode();
 
       StringBuffer content = new StringBuffer();
@@ -387,6 +304,34 @@ public class OAuth2Helper {
     }
   }
 
+  /**
+   * Gets the JWKS url from the issuer's OpenID configuration, requesting the configuration only the first time the
+   * issuer is seen. A failed discovery is not remembered, so that the next request for the issuer tries again.
+   * @param issuer The issuer of the JWT
+   * @return The JWKS url, or null if it could not be discovered
+   */
+  public static String getIssuerJwksUrl(String issuer) {
+    CompletableFuture<String> discovery = new CompletableFuture<>();
+    CompletableFuture<String> existing = issuerJwksUrls.putIfAbsent(issuer, discovery);
+
+    if (existing != null) {
+      return existing.join();
+    }
+
+    String jwksUrl = null;
+    try {
+      String openIdConfigUrl = issuer.replaceAll("/+$", "") + "/.well-known/openid-configuration";
+      jwksUrl = getJwksUrl(openIdConfigUrl);
+    } finally {
+      if (jwksUrl == null) {
+        issuerJwksUrls.remove(issuer, discovery);
+      }
+      discovery.complete(jwksUrl);
+    }
+
+    return jwksUrl;
+  }
+
   private static DecodedJWT getValidationJWT(String token) {
     DecodedJWT jwt = JWT.decode(token);
     Claim idTokenClaim = jwt.getClaim("id_token");
@@ -404,7 +349,7 @@ public class OAuth2Helper {
    * @param authHeader supplied auth header from the request
    * @param algo The algorithm used to create the token key, can be null if you want to determine through the JWK from the oauth endpoint
    * @param issuer The issuer of the JWT
-   * @param jwksUrl The url of the JWKS store
+   * @param jwksUrl The url of the JWKS store, can be null if you want to determine it through the issuer's OpenID configuration
    * @return if verified, return the decoded JWT
    *
   * */
@@ -415,35 +360,23 @@ public class OAuth2Helper {
       //decode received token to verify against jwks, this should also validate a correctly formatted token was received
       DecodedJWT jwt = getValidationJWT(token);
 
-      if(jwksUrl == null || jwksUrl.isEmpty()) {
-        throw new Exception("No URL was supplied to determine JWKS.");
-      }
-
-      //retrieve and validate web key store
-      url = new URL(jwksUrl);
-      List<Jwk> jwks = getAll();
-      if(jwks == null || jwks.isEmpty()) {
-        throw new JWTVerificationException("Failed to acquire public keys");
+      if((jwksUrl == null || jwksUrl.isEmpty()) && issuer != null && !issuer.isEmpty()) {
+        jwksUrl = getIssuerJwksUrl(issuer);
       }
 
-      //check to ensure the key id from the jwt matches the key id from the issuer
-      String issuerKid = "";
-      String jwtKid = jwt.getKeyId();
-      for(int i = 0; i < jwks.size(); i++) {
-        if(jwks.get(i).getId().equals(jwtKid)) {
-          issuerKid = jwtKid;
-          break;
-        }
+      if(jwksUrl == null || jwksUrl.isEmpty()) {
+        throw new Exception("No URL was supplied to determine JWKS.");
       }
 
-      //if no matching key id was found, throw a JWT verification exception
-      if(issuerKid == null || issuerKid.isEmpty()) {
+      //get jwk using the key id from the jwt, from the keys cached for the jwks url
+      Jwk jwk;
+      try {
+        jwk = JwksKeyCache.forUrl(jwksUrl).getKey(jwt.getKeyId());
+      } catch (SigningKeyNotFoundException e) {
+        //if no matching key id was found, throw a JWT verification exception
         throw new JWTVerificationException("Invalid key id");
       }
 
-      //get jwk using verified key id
-      Jwk jwk = get(issuerKid);
-
       Algorithm algorithm;
       //check if algorithm is supplied, if not use jwk to determine algorithm used
       if(algo != null) {
@@ -1,11 +1,16 @@
 package com.lantanagroup.link.auth;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -14,18 +19,91 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class SamsTokenValidator implements  ITokenValidator {
   private static final Logger logger = LoggerFactory.getLogger(SamsTokenValidator.class);
+  private static final long MAX_VALIDATED_TOKENS = 10000;
+  public static final Duration DEFAULT_CACHE_DURATION = Duration.ofMinutes(1);
+  public static final int DEFAULT_MAX_CONNECTIONS = 20;
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+  /**
+   * Shared by every validation request so that connections to SAMS are re-used rather than opened for each request
+   */
+  private static volatile CloseableHttpClient httpClient = buildHttpClient(DEFAULT_MAX_CONNECTIONS, DEFAULT_TIMEOUT);
+
+  /**
+   * Hashes of the tokens that SAMS has reported as valid. Only valid tokens are cached, so that a token SAMS rejected
+   * is checked again on its next use.
+   */
+  private static volatile Cache<String, Boolean> validTokens = buildCache(DEFAULT_CACHE_DURATION);
+
+  private static Cache<String, Boolean> buildCache(Duration cacheDuration) {
+    return Caffeine.newBuilder()
+            .maximumSize(MAX_VALIDATED_TOKENS)
+            .expireAfterWrite(cacheDuration.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+  }
+
+  private static CloseableHttpClient buildHttpClient(int maxConnections, Duration timeout) {
+    // All requests go to the same validation endpoint, so a single route may use every connection in the pool
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+    int timeoutMillis = (int) timeout.toMillis();
+    RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(timeoutMillis)
+            .setSocketTimeout(timeoutMillis)
+            .setConnectionRequestTimeout(timeoutMillis)
+            .build();
+
+    return HttpClientBuilder.create()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .build();
+  }
+
+  /**
+   * Sets how many concurrent connections are made to SAMS, and how long connecting, waiting for a response or waiting
+   * for a free connection may take before the token is treated as not valid. Null or non-positive values reset the
+   * defaults.
+   */
+  public static void setConnectionSettings(Integer maxConnections, Duration timeout) {
+    CloseableHttpClient previous = httpClient;
+    httpClient = buildHttpClient(
+            maxConnections != null && maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS,
+            timeout != null && !timeout.isNegative() && !timeout.isZero() ? timeout : DEFAULT_TIMEOUT);
+
+    try {
+      previous.close();
+    } catch (IOException ex) {
+      logger.warn("Error closing the previous connection pool for SAMS: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Sets how long a token that SAMS reported as valid is accepted without asking SAMS again. Null resets the default.
+   */
+  public static void setCacheDuration(Duration cacheDuration) {
+    validTokens = buildCache(cacheDuration != null ? cacheDuration : DEFAULT_CACHE_DURATION);
+  }
 
   @Override
   public boolean verifyToken(String authHeader, String algorithm, String issuer, String jwksUrl, String validationEndpoint) {
     HttpPost request = new HttpPost(validationEndpoint);
-    CloseableHttpClient httpClient = HttpClientBuilder.create().build();
 
     //get token from auth header
     String token = authHeader.substring("Bearer ".length());
+    String tokenHash = Hashing.sha256().hashString(validationEndpoint + " " + token, StandardCharsets.UTF_8).toString();
+
+    if (validTokens.getIfPresent(tokenHash) != null) {
+      return true;
+    }
 
     try {
       request.setEntity(new StringEntity(token));
@@ -49,9 +127,10 @@ public class SamsTokenValidator implements  ITokenValidator {
         }
      */
 
-    try (httpClient) {
+    try {
       logger.info("Requesting token verification from SAMS");
       HttpResponse result = httpClient.execute(request);
+      // Reading the entity releases the connection back to the pool
       String content = EntityUtils.toString(result.getEntity(), "UTF-8");
       logger.info("SAMS verification response: " + content);
 
@@ -61,7 +140,13 @@ public class SamsTokenValidator implements  ITokenValidator {
 
       ObjectMapper mapper = new ObjectMapper();
       SamsTokenResult tokenResult = mapper.readValue(content, SamsTokenResult.class);
-      return tokenResult.status == "ok";
+      boolean valid = "ok".equals(tokenResult.status);
+
+      if (valid) {
+        validTokens.put(tokenHash, true);
+      }
+
+      return valid;
 
     } catch (IOException e) {
       logger.error("Error requesting token validation: " + e.getMessage());
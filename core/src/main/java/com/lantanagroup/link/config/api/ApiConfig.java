@@ -1,5 +1,7 @@
 package com.lantanagroup.link.config.api;
 
+import com.lantanagroup.link.FhirDataProviderRegistry;
+import com.lantanagroup.link.FhirHelper;
 import com.lantanagroup.link.config.YamlPropertySourceFactory;
 import com.lantanagroup.link.config.auth.LinkAuthManager;
 import lombok.Getter;
@@ -147,11 +149,36 @@ public class ApiConfig {
 
   private String socketTimeout;
 
+  /**
+   * <strong>api.evaluation-service-socket-timeout</strong><br>The socket timeout (in milliseconds) for $evaluate-measure requests to the evaluation-service. Defaults to socket-timeout. Does not affect other requests.
+   */
+  private String evaluationServiceSocketTimeout;
+
   /**
    * <strong>api.measure-evaluation-threads</strong><br>The number of threads to use for patient measure report generation.
    */
   private Integer measureEvaluationThreads;
 
+  /**
+   * <strong>api.job-workers</strong><br>The number of jobs (report generation, data scoops, expunges, etc.) that may run at the same time. Jobs for the same location always run one at a time.
+   */
+  private int jobWorkers = 4;
+
+  /**
+   * <strong>api.job-queue-depth</strong><br>The number of jobs that may be waiting to run before new jobs are rejected.
+   */
+  private int jobQueueDepth = 100;
+
+  /**
+   * <strong>api.max-connections-per-fhir-host</strong><br>The maximum number of connections kept open to each FHIR server (data store, evaluation service, etc.) that the API communicates with. Should be at least measure-evaluation-threads.
+   */
+  private Integer maxConnectionsPerFhirHost = FhirDataProviderRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+  /**
+   * <strong>api.parallel-page-requests</strong><br>The maximum number of pages of search results (i.e. of a census or patient list) that are requested from a FHIR server at the same time, across all requests.
+   */
+  private Integer parallelPageRequests = FhirHelper.DEFAULT_PARALLEL_PAGE_REQUESTS;
+
   /**
    * <strong>api.skip-query</strong><br>Whether to skip the query phase of report generation; useful if patient data bundles have already been stored.
    */
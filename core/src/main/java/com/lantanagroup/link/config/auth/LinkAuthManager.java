@@ -3,6 +3,8 @@ package com.lantanagroup.link.config.auth;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Duration;
+
 @Getter
 @Setter
 public class LinkAuthManager {
@@ -31,4 +33,24 @@ public class LinkAuthManager {
      * <strong>tokenValidationEndpoint</strong><br>The url for the identity provider's token validation endpoint
      */
     private String tokenValidationEndpoint;
+
+    /**
+     * <strong>jwks-cache-duration</strong><br>How long the keys retrieved from the auth-jwks-url are used to verify tokens before they are retrieved again. Keys are also retrieved again when a token is signed with a key that is not known.
+     */
+    private Duration jwksCacheDuration = Duration.ofHours(1);
+
+    /**
+     * <strong>token-validation-cache-duration</strong><br>How long a token that the tokenValidationEndpoint reported as valid is accepted without validating it again
+     */
+    private Duration tokenValidationCacheDuration = Duration.ofMinutes(1);
+
+    /**
+     * <strong>token-validation-max-connections</strong><br>The maximum number of concurrent connections made to the tokenValidationEndpoint
+     */
+    private Integer tokenValidationMaxConnections = 20;
+
+    /**
+     * <strong>token-validation-timeout</strong><br>How long connecting to the tokenValidationEndpoint, waiting for its response, or waiting for a free connection to it may take before the token is treated as not valid
+     */
+    private Duration tokenValidationTimeout = Duration.ofSeconds(10);
 }
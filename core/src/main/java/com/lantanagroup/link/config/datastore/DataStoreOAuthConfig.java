@@ -3,6 +3,8 @@ package com.lantanagroup.link.config.datastore;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Duration;
+
 @Getter @Setter
 public class DataStoreOAuthConfig {
   /***
@@ -35,4 +37,34 @@ public class DataStoreOAuthConfig {
   @Getter
   private String tokenValidationEndpoint;
 
+  /**
+   * <strong>datastore.oauth.jwksCacheDuration</strong><br>How long the keys retrieved from the authJwksUrl are used to verify tokens before they are retrieved again. Keys are also retrieved again when a token is signed with a key that is not known.
+   */
+  @Getter
+  private Duration jwksCacheDuration = Duration.ofHours(1);
+
+  /**
+   * <strong>datastore.oauth.tokenCacheDuration</strong><br>How long a verified token is accepted without verifying it again, never beyond the token's expiration. A duration of zero verifies every request.
+   */
+  @Getter
+  private Duration tokenCacheDuration = Duration.ofMinutes(1);
+
+  /**
+   * <strong>datastore.oauth.tokenValidationCacheDuration</strong><br>How long a token that the tokenValidationEndpoint reported as valid is accepted without validating it again
+   */
+  @Getter
+  private Duration tokenValidationCacheDuration = Duration.ofMinutes(1);
+
+  /**
+   * <strong>datastore.oauth.tokenValidationMaxConnections</strong><br>The maximum number of concurrent connections made to the tokenValidationEndpoint
+   */
+  @Getter
+  private Integer tokenValidationMaxConnections = 20;
+
+  /**
+   * <strong>datastore.oauth.tokenValidationTimeout</strong><br>How long connecting to the tokenValidationEndpoint, waiting for its response, or waiting for a free connection to it may take before the token is treated as not valid
+   */
+  @Getter
+  private Duration tokenValidationTimeout = Duration.ofSeconds(10);
+
 }
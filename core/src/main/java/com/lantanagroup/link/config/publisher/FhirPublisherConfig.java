@@ -15,4 +15,8 @@ public class FhirPublisherConfig {
     private String publisher;
     private FhirPublisherAuthType authType;
     private Map<String, String> authOptions = new HashMap<>();
+    // The number of times to attempt publishing a report before giving up
+    private int maxAttempts = 3;
+    // How long (in milliseconds) to wait after a failed attempt, doubled after each further failed attempt
+    private long retryDelay = 5000;
 }
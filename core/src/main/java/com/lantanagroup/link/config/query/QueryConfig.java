@@ -11,6 +11,7 @@ import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
+import java.time.Duration;
 import java.util.List;
 
 @Getter @Setter
@@ -39,4 +40,9 @@ public class QueryConfig {
    * <strong>query.auth-class</strong><br>The class that should be used (if any) to authenticate queries to the specified <strong>query.fhir-server-base</strong>.
    */
   private String authClass;
+
+  /**
+   * <strong>query.auth-cache-duration</strong><br>How long the headers produced by <strong>query.auth-class</strong> are re-used for, such as "5m". Bearer tokens that are JWTs are re-used until shortly before they expire if that is sooner.
+   */
+  private Duration authCacheDuration = Duration.ofMinutes(5);
 }
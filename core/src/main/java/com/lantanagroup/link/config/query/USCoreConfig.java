@@ -10,6 +10,7 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.NotBlank;
+import java.time.Duration;
 import java.time.Period;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +45,31 @@ public class USCoreConfig {
    */
   private int parallelPatients = 10;
 
+  /**
+   * <strong>uscore.patient-queue-depth</strong><br>The number of patients that may be waiting to be queried before new patients are queried on the thread submitting them.
+   */
+  private int patientQueueDepth = 1000;
+
+  /**
+   * <strong>uscore.hand-off-patient-data</strong><br>When generating a report, pass each patient's data bundle to measure evaluation in memory rather than having measure evaluation read it back from the data store. The bundles are stored to the data store in the background while other patients are queried, and the query fails if any of them cannot be stored. Every patient's bundle is kept in memory until measure evaluation reaches it, so memory use grows with the number of patients in the report.
+   */
+  private boolean handOffPatientData = false;
+
+  /**
+   * <strong>uscore.parallel-resource-queries</strong><br>The number of resource queries to run at a single time for each patient.
+   */
+  private int parallelResourceQueries = 4;
+
+  /**
+   * <strong>uscore.other-resource-cache-size</strong><br>The maximum number of other (non-patient) resources to keep cached across patients.
+   */
+  private long otherResourceCacheSize = 10000;
+
+  /**
+   * <strong>uscore.other-resource-cache-expiry</strong><br>How long an other (non-patient) resource is cached after it is retrieved, such as "1h".
+   */
+  private Duration otherResourceCacheExpiry = Duration.ofHours(1);
+
   /**
    * <strong>uscore.query-parameters</strong><br>Query parameters for individual measures.
    */
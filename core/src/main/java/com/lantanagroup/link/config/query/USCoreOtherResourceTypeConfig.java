@@ -11,6 +11,15 @@ import lombok.Setter;
 @NoArgsConstructor
 public class USCoreOtherResourceTypeConfig {
     private String resourceType;
+
+    /**
+     * Whether the resources are retrieved with an _id search. Otherwise, they are retrieved with a batch of reads (or,
+     * if the EHR does not accept batches, read individually).
+     */
     private Boolean supportsSearch = false;
+
+    /**
+     * The maximum number of resources retrieved by a single _id search or batch
+     */
     private Integer countPerSearch = 100;
 }
@@ -20,6 +20,9 @@ public class Job {
     private Date created;
     private Date lastUpdated;
     private List<JobNote> notes;
+    // Position of the job among all jobs waiting to run, in submission order (1 is the oldest), null if the job is not
+    // waiting. Jobs for other locations may run before it while it waits on an earlier job for its own location.
+    private Integer queuePosition;
 
     public Job() {}
 
@@ -9,6 +9,8 @@ import org.hl7.fhir.r4.model.*;
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 @Setter
@@ -23,11 +25,36 @@ public class ReportContext {
   private List<MeasureContext> measureContexts = new ArrayList<>();
   private MeasureContext measureContext;
   private Location reportLocation;
+  // Patient data bundles (by id) handed directly from the query to measure evaluation; see uscore.hand-off-patient-data
+  private Map<String, Bundle> patientDataBundles = new ConcurrentHashMap<>();
+  // Whether measure evaluation follows the query, and so whether the query should hand it patient data bundles
+  private boolean handOffPatientData;
 
   public ReportContext(FhirDataProvider fhirProvider) {
     this.fhirProvider = fhirProvider;
   }
 
+  /**
+   * Removes the patient data bundle that the query handed off in memory, returning a shallow copy of it so that
+   * changes made to the bundle during evaluation do not affect the bundle that the query produced
+   *
+   * @return The copy of the bundle, or null if the bundle was not handed off (and must be read from the data store)
+   */
+  public Bundle removePatientDataBundle(String patientDataBundleId) {
+    Bundle handedOff = this.patientDataBundles.remove(patientDataBundleId);
+
+    if (handedOff == null) {
+      return null;
+    }
+
+    Bundle patientBundle = new Bundle();
+    patientBundle.setId(handedOff.getIdElement().getIdPart());
+    patientBundle.setMeta(handedOff.getMeta());
+    patientBundle.setType(handedOff.getType());
+    patientBundle.setEntry(new ArrayList<>(handedOff.getEntry()));
+    return patientBundle;
+  }
+
 
   @Getter
   @Setter
@@ -0,0 +1,26 @@
+package com.lantanagroup.link;
+
+import com.lantanagroup.link.config.bundler.BundlerConfig;
+import org.hl7.fhir.r4.model.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class FhirBundlerTests {
+  @Test
+  public void generateBundleTest() {
+    BundlerConfig config = new BundlerConfig();
+    config.setOrgNpi("1234567890");
+    MeasureReport aggregate = new MeasureReport();
+    aggregate.setId("#report1");
+
+    Bundle bundle = new FhirBundler(config).generateBundle(List.of(aggregate));
+
+    Assert.assertEquals(2, bundle.getEntry().size());
+    Assert.assertTrue(bundle.getEntry().get(0).getResource() instanceof Organization);
+    Assert.assertSame(aggregate, bundle.getEntry().get(1).getResource());
+    Assert.assertEquals("Organization/" + bundle.getEntry().get(0).getResource().getIdElement().getIdPart(), aggregate.getReporter().getReference());
+    Assert.assertEquals("https://lantanagroup.com/fhir/nhsn-measures/MeasureReport/report1", bundle.getEntry().get(1).getFullUrl());
+  }
+}
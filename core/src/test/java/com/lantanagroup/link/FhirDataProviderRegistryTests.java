@@ -0,0 +1,85 @@
+package com.lantanagroup.link;
+
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.lantanagroup.link.config.api.ApiConfig;
+import com.lantanagroup.link.config.api.ApiDataStoreConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FhirDataProviderRegistryTests {
+  private static ApiDataStoreConfig createDataStoreConfig(String username) {
+    ApiDataStoreConfig config = new ApiDataStoreConfig();
+    config.setBaseUrl("http://registry-test.com/fhir");
+    config.setUsername(username);
+    config.setPassword("password");
+    return config;
+  }
+
+  @Test
+  public void sharesProviderForSameServerTest() {
+    FhirDataProvider provider = FhirDataProviderRegistry.get("http://registry-test.com/evaluation");
+
+    Assert.assertSame(provider, FhirDataProviderRegistry.get("http://registry-test.com/evaluation"));
+    Assert.assertNotSame(provider, FhirDataProviderRegistry.get("http://registry-test.com/other"));
+  }
+
+  @Test
+  public void sharesProviderForSameCredentialsTest() {
+    FhirDataProvider provider = FhirDataProviderRegistry.get(createDataStoreConfig("user1"));
+
+    // A separate, but equal, config gets the same provider
+    Assert.assertSame(provider, FhirDataProviderRegistry.get(createDataStoreConfig("user1")));
+    Assert.assertNotSame(provider, FhirDataProviderRegistry.get(createDataStoreConfig("user2")));
+
+    // Providers created for the data store use the shared client
+    Assert.assertSame(provider.getClient(), new FhirDataProvider(createDataStoreConfig("user1")).getClient());
+  }
+
+  @Test
+  public void separateClientFactoryPerTimeoutTest() {
+    int defaultSocketTimeout = FhirContextProvider.getFhirContext().getRestfulClientFactory().getSocketTimeout();
+
+    IRestfulClientFactory evaluation = FhirDataProviderRegistry.getClientFactory("http://registry-test.com/evaluation", "300000", null, null);
+    IRestfulClientFactory other = FhirDataProviderRegistry.getClientFactory("http://registry-test.com/other", null, null, null);
+
+    // Servers on the same host with the same timeouts share a factory (and its pool of connections)
+    Assert.assertSame(evaluation, FhirDataProviderRegistry.getClientFactory("http://registry-test.com/fhir", "300000", null, null));
+    Assert.assertNotSame(evaluation, other);
+
+    Assert.assertEquals(300000, evaluation.getSocketTimeout());
+    Assert.assertEquals(defaultSocketTimeout, other.getSocketTimeout());
+
+    // The timeout is not set on the shared FhirContext
+    FhirDataProviderRegistry.get("http://registry-test.com/evaluation", "300000");
+    Assert.assertEquals(defaultSocketTimeout, FhirContextProvider.getFhirContext().getRestfulClientFactory().getSocketTimeout());
+  }
+
+  @Test
+  public void configureAppliesToExistingFactoriesTest() {
+    ServerValidationModeEnum defaultValidationMode = FhirContextProvider.getFhirContext().getRestfulClientFactory().getServerValidationMode();
+
+    // A provider is created before the configuration is applied (i.e. by a bean created before ApiInit)
+    IRestfulClientFactory before = FhirDataProviderRegistry.getClientFactory("http://configure-test.com/before", null, null, null);
+    Assert.assertEquals(FhirDataProviderRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST, before.getPoolMaxTotal());
+
+    ApiConfig config = new ApiConfig();
+    config.setMaxConnectionsPerFhirHost(5);
+    config.setValidateFhirServer(false);
+    FhirDataProviderRegistry.configure(config);
+
+    try {
+      IRestfulClientFactory after = FhirDataProviderRegistry.getClientFactory("http://configure-test.com/after", null, null, null);
+      for (IRestfulClientFactory factory : new IRestfulClientFactory[]{before, after}) {
+        Assert.assertEquals(5, factory.getPoolMaxTotal());
+        Assert.assertEquals(5, factory.getPoolMaxPerRoute());
+        Assert.assertEquals(ServerValidationModeEnum.NEVER, factory.getServerValidationMode());
+      }
+    } finally {
+      FhirDataProviderRegistry.configure(new ApiConfig());
+    }
+
+    Assert.assertEquals(FhirDataProviderRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST, before.getPoolMaxTotal());
+    Assert.assertEquals(defaultValidationMode, before.getServerValidationMode());
+  }
+}
@@ -8,6 +8,7 @@ import com.lantanagroup.link.config.api.ApiConfig;
 import com.lantanagroup.link.config.api.ApiReportDefsBundleConfig;
 import com.lantanagroup.link.config.api.ApiReportDefsConfig;
 import com.lantanagroup.link.config.api.ApiReportDefsUrlConfig;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.*;
@@ -18,6 +19,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -108,6 +111,75 @@ public class FhirHelperTests {
     Assert.assertEquals(1, bundles.size());
   }
 
+  @Test
+  public void getAllPagesInParallelTest() {
+    String pageUrl = "http://test.com/fhir?_getpages=abc&_getpagesoffset=%s&_count=2&_bundletype=searchset";
+    fhirDataProviderTest = mock(FhirDataProvider.class);
+
+    Bundle firstPage = new Bundle().setTotal(5);
+    firstPage.addEntry().setResource(new Patient().setId("patient0"));
+    firstPage.addEntry().setResource(new Patient().setId("patient1"));
+    firstPage.addLink().setRelation(IBaseBundle.LINK_NEXT).setUrl(String.format(pageUrl, 2));
+
+    Bundle secondPage = new Bundle().setTotal(5);
+    secondPage.addEntry().setResource(new Patient().setId("patient2"));
+    secondPage.addEntry().setResource(new Patient().setId("patient3"));
+    secondPage.addLink().setRelation(IBaseBundle.LINK_NEXT).setUrl(String.format(pageUrl, 4));
+    when(fhirDataProviderTest.fetchResourceFromUrl(String.format(pageUrl, 2))).thenReturn(secondPage);
+
+    Bundle thirdPage = new Bundle().setTotal(5);
+    thirdPage.addEntry().setResource(new Patient().setId("patient4"));
+    when(fhirDataProviderTest.fetchResourceFromUrl(String.format(pageUrl, 4))).thenReturn(thirdPage);
+
+    List<Patient> patients = FhirHelper.getAllPages(firstPage, fhirDataProviderTest, FhirContextProvider.getFhirContext(), Patient.class);
+    Assert.assertEquals(5, patients.size());
+    for (int i = 0; i < patients.size(); i++) {
+      Assert.assertEquals("patient" + i, patients.get(i).getIdElement().getIdPart());
+    }
+  }
+
+  @Test
+  public void getAllPagesLimitsParallelRequestsTest() {
+    String pageUrl = "http://test.com/fhir?_getpages=abc&_getpagesoffset=%s&_count=1&_bundletype=searchset";
+    FhirDataProvider fhirDataProvider = mock(FhirDataProvider.class);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    when(fhirDataProvider.fetchResourceFromUrl(any())).thenAnswer(invocation -> {
+      String url = invocation.getArgument(0);
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(20);
+      running.decrementAndGet();
+      Bundle page = new Bundle().setTotal(10);
+      page.addEntry().setResource(new Patient().setId("patient" + url.replaceAll(".*_getpagesoffset=(\\d+).*", "$1")));
+      return page;
+    });
+
+    FhirHelper.setParallelPageRequests(2);
+    try {
+      // Two searches at once still share the same two threads
+      List<CompletableFuture<List<Patient>>> searches = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        Bundle firstPage = new Bundle().setTotal(10);
+        firstPage.addEntry().setResource(new Patient().setId("patient0"));
+        firstPage.addLink().setRelation(IBaseBundle.LINK_NEXT).setUrl(String.format(pageUrl, 1));
+        searches.add(CompletableFuture.supplyAsync(() ->
+                FhirHelper.getAllPages(firstPage, fhirDataProvider, FhirContextProvider.getFhirContext(), Patient.class)));
+      }
+
+      for (CompletableFuture<List<Patient>> search : searches) {
+        List<Patient> patients = search.join();
+        Assert.assertEquals(10, patients.size());
+        for (int i = 0; i < patients.size(); i++) {
+          Assert.assertEquals("patient" + i, patients.get(i).getIdElement().getIdPart());
+        }
+      }
+      Assert.assertTrue(maxRunning.get() <= 2);
+    } finally {
+      FhirHelper.setParallelPageRequests(null);
+    }
+  }
+
   @Test
   public void getReportAggregatorClassTest() {
     ApiConfig apiConfig = new ApiConfig();
@@ -190,4 +262,62 @@ public class FhirHelperTests {
     Assert.assertEquals("com.lantanagroup.link.thsa.THSAAggregator", reportAggregatorClassName);
   }
 
+
+  @Test
+  public void addEntriesToBundleTest() {
+    Bundle destination = new Bundle();
+    destination.addEntry().setResource(new Patient().setId("patient1"));
+    destination.addEntry().setResource(new Encounter().setId("encounter1"));
+
+    Bundle source = new Bundle();
+    // Same type and id as a destination entry, but a different String instance
+    source.addEntry().setResource(new Patient().setId(new String("patient1")));
+    // Same id as a destination entry, but a different type
+    source.addEntry().setResource(new Patient().setId("encounter1"));
+    source.addEntry().setResource(new Observation().setId("observation1"));
+    source.addEntry().setResource(new Observation().setId("observation1"));
+    source.addEntry().setResource(new Observation());
+
+    FhirHelper.addEntriesToBundle(source, destination);
+
+    Assert.assertEquals(4, destination.getEntry().size());
+    Assert.assertEquals("Patient/encounter1", destination.getEntry().get(2).getRequest().getUrl());
+    Assert.assertEquals(Bundle.HTTPVerb.PUT, destination.getEntry().get(2).getRequest().getMethod());
+    Assert.assertEquals("Observation/observation1", destination.getEntry().get(3).getRequest().getUrl());
+  }
+
+  @Test
+  public void addEntriesToLargeBundleTest() {
+    Bundle destination = new Bundle();
+    Bundle source = new Bundle();
+    for (int i = 0; i < 50000; i++) {
+      destination.addEntry().setResource(new Observation().setId("observation" + i));
+      // Half of the source overlaps with the destination
+      source.addEntry().setResource(new Observation().setId("observation" + (i + 25000)));
+    }
+
+    long start = System.currentTimeMillis();
+    FhirHelper.addEntriesToBundle(source, destination);
+    long elapsed = System.currentTimeMillis() - start;
+
+    Assert.assertEquals(75000, destination.getEntry().size());
+    Assert.assertTrue(String.format("Merging took %sms", elapsed), elapsed < 5000);
+  }
+
+  @Test
+  public void createUpdateBatchTest() {
+    MeasureReport report1 = new MeasureReport();
+    report1.setId("report1");
+    MeasureReport report2 = new MeasureReport();
+    report2.setId("report2");
+
+    Bundle batch = FhirHelper.createUpdateBatch(List.of(report1, report2));
+
+    Assert.assertEquals(Bundle.BundleType.BATCH, batch.getType());
+    Assert.assertEquals(2, batch.getEntry().size());
+    Assert.assertSame(report1, batch.getEntry().get(0).getResource());
+    Assert.assertEquals(Bundle.HTTPVerb.PUT, batch.getEntry().get(0).getRequest().getMethod());
+    Assert.assertEquals("MeasureReport/report1", batch.getEntry().get(0).getRequest().getUrl());
+    Assert.assertEquals("MeasureReport/report2", batch.getEntry().get(1).getRequest().getUrl());
+  }
 }
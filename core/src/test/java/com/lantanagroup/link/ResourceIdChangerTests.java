@@ -172,4 +172,31 @@ public class ResourceIdChangerTests {
     // Should take less than ten seconds
     Assert.assertTrue(Duration.between(start, end).compareTo(Duration.ofSeconds(10L)) < 0);
   }
+
+  @Test
+  public void findReferencesPatientBundleTest() {
+    Bundle bundle = new Bundle();
+    Patient patient = new Patient();
+    patient.setId("patient");
+    bundle.addEntry().setResource(patient);
+    for (int i = 0; i < 499; i++) {
+      Observation observation = new Observation();
+      observation.setId("observation" + i);
+      observation.setSubject(new Reference("Patient/patient"));
+      observation.setEncounter(new Reference("Encounter/encounter" + i));
+      observation.getCode().addCoding().setSystem("http://loinc.org").setCode("8867-4");
+      observation.setValue(new Quantity(72).setUnit("/min"));
+      bundle.addEntry().setResource(observation);
+    }
+
+    Assert.assertEquals(998, ResourceIdChanger.findReferences(bundle).size());
+
+    Instant start = Instant.now();
+    for (int i = 0; i < 100; i++) {
+      ResourceIdChanger.findReferences(bundle);
+    }
+    Instant end = Instant.now();
+    // Scanning the bundle 100 times should take less than five seconds
+    Assert.assertTrue(Duration.between(start, end).compareTo(Duration.ofSeconds(5L)) < 0);
+  }
 }
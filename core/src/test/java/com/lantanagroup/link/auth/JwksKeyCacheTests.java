@@ -0,0 +1,105 @@
+package com.lantanagroup.link.auth;
+
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class JwksKeyCacheTests {
+  private final AtomicInteger requests = new AtomicInteger();
+  private final List<String> keyIds = new CopyOnWriteArrayList<>();
+  private HttpServer server;
+  private JwksKeyCache cache;
+
+  /**
+   * Starts a JWKS endpoint that publishes a key for each of the key ids in keyIds. Each test gets its own port, and
+   * so its own (static) cache for the url.
+   */
+  @Before
+  public void startJwksServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/jwks", exchange -> {
+      this.requests.incrementAndGet();
+      String keys = this.keyIds.stream()
+              .map(keyId -> String.format("{\"kty\":\"RSA\",\"kid\":\"%s\",\"use\":\"sig\",\"alg\":\"RS256\",\"n\":\"sXch\",\"e\":\"AQAB\"}", keyId))
+              .collect(Collectors.joining(","));
+      byte[] body = String.format("{\"keys\":[%s]}", keys).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    this.server.start();
+    this.cache = JwksKeyCache.forUrl(String.format("http://localhost:%d/jwks", this.server.getAddress().getPort()));
+  }
+
+  @After
+  public void stopJwksServer() {
+    this.server.stop(0);
+  }
+
+  @Test
+  public void cachesKeysTest() throws Exception {
+    this.keyIds.add("key1");
+    this.keyIds.add("key2");
+
+    Assert.assertEquals("key1", this.cache.getKey("key1").getId());
+    Assert.assertEquals("key2", this.cache.getKey("key2").getId());
+    Assert.assertEquals("key1", this.cache.getKey("key1").getId());
+    Assert.assertEquals(1, this.requests.get());
+  }
+
+  @Test
+  public void refetchesUnknownKeyTest() throws Exception {
+    this.keyIds.add("key1");
+    Assert.assertEquals("key1", this.cache.getKey("key1").getId());
+
+    // The issuer rotates its keys
+    this.keyIds.add("key2");
+    Assert.assertEquals("key2", this.cache.getKey("key2").getId());
+    Assert.assertEquals(2, this.requests.get());
+  }
+
+  @Test
+  public void limitsRefetchesForUnknownKeysTest() throws Exception {
+    this.keyIds.add("key1");
+    Assert.assertEquals("key1", this.cache.getKey("key1").getId());
+
+    // The first unknown key id refetches the keys, later ones within the refresh interval don't
+    for (String keyId : new String[]{"unknown1", "unknown2", "unknown3"}) {
+      try {
+        this.cache.getKey(keyId);
+        Assert.fail("Expected no key to be found for " + keyId);
+      } catch (SigningKeyNotFoundException ignored) {
+      }
+    }
+
+    Assert.assertEquals(2, this.requests.get());
+  }
+
+  @Test
+  public void rejectsTokenWithoutKeyIdTest() throws Exception {
+    // Even when the issuer publishes a single key
+    this.keyIds.add("key1");
+
+    try {
+      this.cache.getKey(null);
+      Assert.fail("Expected a token without a key id to be rejected");
+    } catch (SigningKeyNotFoundException ignored) {
+    }
+
+    Assert.assertEquals(0, this.requests.get());
+  }
+}
@@ -0,0 +1,101 @@
+package com.lantanagroup.link.auth;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OAuth2HelperTests {
+  private final AtomicInteger requests = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+  private HttpServer server;
+  private String baseUrl;
+
+  /**
+   * Starts an issuer whose OpenID configuration is only returned once the test releases it. Requests for the "hung"
+   * issuer are never answered. Each test gets its own port, and so its own (static) discovery for the issuer.
+   */
+  @Before
+  public void startIssuerServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.setExecutor(this.serverExecutor);
+    this.server.createContext("/", exchange -> {
+      this.requests.incrementAndGet();
+      try {
+        this.release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (exchange.getRequestURI().getPath().startsWith("/hung")) {
+        exchange.close();
+        return;
+      }
+
+      byte[] body = String.format("{\"jwks_uri\":\"%s/jwks\"}", this.baseUrl).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    this.server.start();
+    this.baseUrl = String.format("http://localhost:%d", this.server.getAddress().getPort());
+  }
+
+  @After
+  public void stopIssuerServer() {
+    this.release.countDown();
+    this.server.stop(0);
+    this.serverExecutor.shutdown();
+  }
+
+  @Test
+  public void discoversJwksUrlOncePerIssuerTest() throws Exception {
+    String issuer = this.baseUrl + "/issuer";
+    ExecutorService requestExecutor = Executors.newFixedThreadPool(200);
+
+    try {
+      // 200 requests arrive for the issuer before its discovery has completed
+      List<Future<String>> jwksUrls = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        jwksUrls.add(requestExecutor.submit(() -> OAuth2Helper.getIssuerJwksUrl(issuer)));
+      }
+      Thread.sleep(500);
+      this.release.countDown();
+
+      for (Future<String> jwksUrl : jwksUrls) {
+        Assert.assertEquals(this.baseUrl + "/jwks", jwksUrl.get(10, TimeUnit.SECONDS));
+      }
+      Assert.assertEquals(1, this.requests.get());
+
+      // Later requests don't discover it again
+      Assert.assertEquals(this.baseUrl + "/jwks", OAuth2Helper.getIssuerJwksUrl(issuer));
+      Assert.assertEquals(1, this.requests.get());
+    } finally {
+      requestExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void timesOutHungDiscoveryTest() {
+    long start = System.currentTimeMillis();
+    Assert.assertNull(OAuth2Helper.getIssuerJwksUrl(this.baseUrl + "/hung"));
+    Assert.assertTrue(System.currentTimeMillis() - start < 9000);
+  }
+}
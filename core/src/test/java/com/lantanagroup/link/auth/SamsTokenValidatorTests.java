@@ -0,0 +1,97 @@
+package com.lantanagroup.link.auth;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SamsTokenValidatorTests {
+  private final AtomicInteger requests = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+  private HttpServer server;
+  private String validationEndpoint;
+
+  /**
+   * Starts a validation endpoint that reports "valid-token" as valid and every other token as not valid. Requests for
+   * "slow-token" are not answered until the test releases them.
+   */
+  @Before
+  public void startValidationServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.setExecutor(this.serverExecutor);
+    this.server.createContext("/validate", exchange -> {
+      this.requests.incrementAndGet();
+      String token = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+      if (token.equals("slow-token")) {
+        try {
+          this.release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      String status = token.equals("valid-token") ? "ok" : "fail";
+      byte[] body = String.format("{\"status\":\"%s\",\"reason\":\"Test\"}", status).getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    this.server.start();
+    this.validationEndpoint = String.format("http://localhost:%d/validate", this.server.getAddress().getPort());
+  }
+
+  @After
+  public void stopValidationServer() {
+    this.release.countDown();
+    this.server.stop(0);
+    this.serverExecutor.shutdown();
+    SamsTokenValidator.setConnectionSettings(null, null);
+  }
+
+  private boolean verifyToken(String token) {
+    return new SamsTokenValidator().verifyToken("Bearer " + token, null, null, null, this.validationEndpoint);
+  }
+
+  @Test
+  public void cachesValidTokensTest() {
+    Assert.assertTrue(this.verifyToken("valid-token"));
+    Assert.assertTrue(this.verifyToken("valid-token"));
+    Assert.assertEquals(1, this.requests.get());
+  }
+
+  @Test
+  public void doesNotCacheInvalidTokensTest() {
+    Assert.assertFalse(this.verifyToken("invalid-token"));
+    Assert.assertFalse(this.verifyToken("invalid-token"));
+    Assert.assertEquals(2, this.requests.get());
+  }
+
+  @Test
+  public void timesOutSlowValidationTest() {
+    SamsTokenValidator.setConnectionSettings(1, Duration.ofMillis(500));
+
+    long start = System.currentTimeMillis();
+    Assert.assertFalse(this.verifyToken("slow-token"));
+    Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+    // The endpoint answers again once released
+    this.release.countDown();
+    Assert.assertTrue(this.verifyToken("valid-token"));
+    Assert.assertEquals(2, this.requests.get());
+  }
+}
@@ -1,6 +1,8 @@
 package com.lantanagroup.link.datastore;
 
+import com.lantanagroup.link.auth.JwksKeyCache;
 import com.lantanagroup.link.auth.LinkAuthManager;
+import com.lantanagroup.link.auth.SamsTokenValidator;
 import com.lantanagroup.link.config.datastore.DataStoreConfig;
 import com.lantanagroup.link.datastore.auth.PreAuthTokenHeaderFilter;
 import com.lantanagroup.link.datastore.filter.IpFilter;
@@ -43,6 +45,12 @@ public class DataStoreSecurityConfig extends WebSecurityConfigurerAdapter {
         String tokenVerificationClass = this.config.getOauth() != null ? this.config.getOauth().getTokenVerificationClass() : null;
         String tokenValidationEndpoint = this.config.getOauth() != null ? this.config.getOauth().getTokenValidationEndpoint() : null;
 
+        if (this.config.getOauth() != null) {
+            JwksKeyCache.setCacheDuration(this.config.getOauth().getJwksCacheDuration());
+            SamsTokenValidator.setCacheDuration(this.config.getOauth().getTokenValidationCacheDuration());
+            SamsTokenValidator.setConnectionSettings(this.config.getOauth().getTokenValidationMaxConnections(), this.config.getOauth().getTokenValidationTimeout());
+        }
+
         authFilter.setAuthenticationManager(new LinkAuthManager(issuer, algorithm, authJwksUrl, tokenVerificationClass, this.config.getBasicAuthUsers(), tokenValidationEndpoint));
 
         IpFilter ipFilter = new IpFilter(
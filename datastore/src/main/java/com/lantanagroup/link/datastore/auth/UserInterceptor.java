@@ -7,6 +7,10 @@ import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.hash.Hashing;
 import com.lantanagroup.link.auth.BasicAuthModel;
 import com.lantanagroup.link.auth.OAuth2Helper;
 import com.lantanagroup.link.config.datastore.DataStoreConfig;
@@ -14,16 +18,55 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
 import java.util.Locale;
 
 
 @Interceptor
 public class UserInterceptor {
   protected static final Logger logger = LoggerFactory.getLogger(UserInterceptor.class);
+  private static final long MAX_VERIFIED_TOKENS = 10000;
   private DataStoreConfig config;
 
+  /**
+   * Tokens that have already been verified, keyed by a hash of the token, so that the many requests made with the
+   * same token (i.e. each page of a search, each entry of a bulk write) don't each verify its signature
+   */
+  private final Cache<String, DecodedJWT> verifiedTokens;
+
   public UserInterceptor(DataStoreConfig config) {
     this.config = config;
+
+    Duration tokenCacheDuration = config.getOauth() != null && config.getOauth().getTokenCacheDuration() != null ?
+            config.getOauth().getTokenCacheDuration() :
+            Duration.ZERO;
+
+    this.verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(MAX_VERIFIED_TOKENS)
+            .expireAfter(new Expiry<String, DecodedJWT>() {
+              @Override
+              public long expireAfterCreate(String key, DecodedJWT jwt, long currentTime) {
+                long expiresIn = tokenCacheDuration.toNanos();
+                Date exp = jwt.getExpiresAt();
+                if (exp != null) {
+                  expiresIn = Math.min(expiresIn, Duration.ofMillis(exp.getTime() - System.currentTimeMillis()).toNanos());
+                }
+                return Math.max(0, expiresIn);
+              }
+
+              @Override
+              public long expireAfterUpdate(String key, DecodedJWT jwt, long currentTime, long currentDuration) {
+                return currentDuration;
+              }
+
+              @Override
+              public long expireAfterRead(String key, DecodedJWT jwt, long currentTime, long currentDuration) {
+                return currentDuration;
+              }
+            })
+            .build();
   }
 
   private void assertToken(String token) {
@@ -33,6 +76,11 @@ public class UserInterceptor {
       throw new ConfigurationException(msg);
     }
 
+    String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+    if (this.verifiedTokens.getIfPresent(tokenHash) != null) {
+      return;
+    }
+
     DecodedJWT jwt = OAuth2Helper.verifyToken(
             token,
             OAuth2Helper.TokenAlgorithmsEnum.RSA256,
@@ -44,6 +92,8 @@ public class UserInterceptor {
       logger.error(msg);
       throw new AuthenticationException(msg);
     }
+
+    this.verifiedTokens.put(tokenHash, jwt);
   }
 
   private void assertBasic(String basic) {
@@ -24,6 +24,7 @@ import java.util.stream.Collectors;
 @Component
 public class NdmsMeasureReportGenerator implements IMeasureReportGenerator {
     private static final Logger logger = LoggerFactory.getLogger(NdmsMeasureReportGenerator.class);
+    private static final int PATIENT_REPORT_BATCH_SIZE = 50;
 
     private CodeSystem trac2esCodeSystem = null;
     private final NdmsUtility ndmsUtility = new NdmsUtility();
@@ -59,9 +60,12 @@ public class NdmsMeasureReportGenerator implements IMeasureReportGenerator {
                         try {
                             String patientDataBundleId = ReportIdHelper.getPatientDataBundleId(reportContext.getMasterIdentifier(), patient.getId());
 
-                            // get patient bundle from the FHIR Data Store Server
-                            FhirDataProvider fhirStoreProvider = new FhirDataProvider(config.getDataStore());
-                            Bundle patientBundle = fhirStoreProvider.getBundleById(patientDataBundleId);
+                            // get patient bundle handed off by the query, or from the FHIR Data Store Server
+                            Bundle patientBundle = reportContext.removePatientDataBundle(patientDataBundleId);
+                            if (patientBundle == null) {
+                                FhirDataProvider fhirStoreProvider = FhirDataProviderRegistry.get(config.getDataStore());
+                                patientBundle = fhirStoreProvider.getBundleById(patientDataBundleId);
+                            }
 
                             // Pull Location identifiers from Encounters if the Location has a period.start / period.end
                             // that falls in range of the passed in start/end dates when generating the reports.
@@ -131,12 +135,7 @@ public class NdmsMeasureReportGenerator implements IMeasureReportGenerator {
                         // Tag individual MeasureReport as patient-data as it references a patient and will be found for expunge
                         patientMeasureReport.getMeta().addTag(Constants.MAIN_SYSTEM, Constants.PATIENT_DATA_TAG,"");
 
-                        logger.info("Persisting patient {} measure report with id {}", patient, measureReportId);
-                        Stopwatch stopwatch = stopwatchManager.start("store-measure-report");
-                        reportContext.getFhirProvider().updateResource(patientMeasureReport);
-                        stopwatch.stop();
-
-                        // Add Location Info to MeasureReport
+                        // Add Location Info to MeasureReport (persisted along with the other patient reports by store())
                         ndmsUtility.addLocationSubjectToMeasureReport(patientMeasureReport, reportContext.getReportLocation());
 
                         return patientMeasureReport;
@@ -160,7 +159,8 @@ public class NdmsMeasureReportGenerator implements IMeasureReportGenerator {
 
     @Override
     public void store(ReportContext.MeasureContext measureContext, ReportContext reportContext) {
-        measureContext.getPatientReports().forEach(report -> reportContext.getFhirProvider().updateResource(report));
+        logger.info("Persisting {} patient measure reports", measureContext.getPatientReports().size());
+        reportContext.getFhirProvider().updateResources(measureContext.getPatientReports(), PATIENT_REPORT_BATCH_SIZE);
 
 
         // Tag & Store aggregated report
@@ -249,7 +249,7 @@ public class NdmsMeasureReportGenerator implements IMeasureReportGenerator {
 
         // Pull down the CodeSystem if necessary
         if ((trac2esCodeSystem == null) || trac2esCodeSystem.isEmpty()) {
-            FhirDataProvider evaluationService = new FhirDataProvider(evaluationServiceLocation);
+            FhirDataProvider evaluationService = FhirDataProviderRegistry.get(evaluationServiceLocation);
             trac2esCodeSystem = evaluationService.getCodeSystemById(codeSystemLocation);
         }
 
@@ -0,0 +1,180 @@
+package com.lantanagroup.link.query;
+
+import com.lantanagroup.link.config.query.USCoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Long-lived, bounded pool of threads used to query the EHR for patients and their data. The pool is shared by
+ * every report generation so that consecutive scoops re-use warm threads instead of creating a new pool each time.
+ * When the queue is full the submitting thread runs the task itself, which throttles submission to the rate the
+ * EHR can be queried at.
+ * A second pool runs the individual resource queries of each patient, so that a patient task waiting on its
+ * resource queries never waits on a thread held by another patient task. A third pool prefetches the next page of
+ * each resource query for the same reason. Both are sized (and their queues bounded) to the number of queries that
+ * the patient threads can have in flight; anything beyond that also runs on the submitting thread.
+ */
+@Component
+public class PatientQueryExecutor {
+  private static final Logger logger = LoggerFactory.getLogger(PatientQueryExecutor.class);
+
+  private final ThreadPoolExecutor executor;
+  private final ThreadPoolExecutor resourceQueryExecutor;
+  private final ThreadPoolExecutor pageExecutor;
+  private final ThreadPoolExecutor storeExecutor;
+
+  @Autowired
+  public PatientQueryExecutor(USCoreConfig usCoreConfig) {
+    int threads = Math.max(1, usCoreConfig.getParallelPatients());
+    int queueDepth = Math.max(1, usCoreConfig.getPatientQueueDepth());
+    this.executor = createPool("patient-query-", threads, queueDepth);
+
+    // Each patient has at most parallel-resource-queries queries in flight, and each resource query prefetches at
+    // most one page at a time, so neither queue should fill up unless the executor is shared with other callers
+    int resourceQueryThreads = threads * Math.max(1, usCoreConfig.getParallelResourceQueries());
+    this.resourceQueryExecutor = createPool("patient-resource-query-", resourceQueryThreads, resourceQueryThreads);
+    this.pageExecutor = createPool("patient-page-query-", resourceQueryThreads, resourceQueryThreads);
+
+    // Patient data that is handed off in memory is stored in the background, by as many threads as there are patient
+    // threads. Once as many bundles again are waiting to be stored, the patient thread stores its bundle itself, which
+    // keeps the number of bundles held in memory for storage bounded.
+    this.storeExecutor = createPool("patient-data-store-", threads, threads);
+
+    logger.info("Patient queries limited to {} threads with a queue depth of {}", threads, queueDepth);
+  }
+
+  /**
+   * Creates a pool of daemon threads whose queue holds at most <code>queueDepth</code> tasks. When the queue is full
+   * the task is run on the submitting thread, unless the pool has been shut down, in which case the task is rejected
+   * (rather than silently discarded, which would leave the future of the task incomplete forever).
+   */
+  private static ThreadPoolExecutor createPool(String threadNamePrefix, int threads, int queueDepth) {
+    AtomicInteger threadCount = new AtomicInteger();
+
+    return new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueDepth),
+            runnable -> {
+              Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            (runnable, pool) -> {
+              if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Patient query threads have been shut down");
+              }
+              runnable.run();
+            });
+  }
+
+  /**
+   * Runs the task for each of the items on the shared patient query threads
+   *
+   * @param items The items (patients) to run the task for
+   * @param task  The task to run for each item
+   * @param <T>   The type of item
+   * @return A future that completes as soon as the task has finished for every item
+   */
+  public <T> CompletableFuture<Void> forEach(Collection<T> items, Consumer<T> task) {
+    return this.forEachIndexed(items, (item, index) -> task.accept(item));
+  }
+
+  /**
+   * Runs the task for each of the items on the shared patient query threads, passing the task the position of the
+   * item within the collection so that it does not have to be looked up by the task
+   *
+   * @param items The items (patients) to run the task for
+   * @param task  The task to run for each item and its index
+   * @param <T>   The type of item
+   * @return A future that completes as soon as the task has finished for every item
+   */
+  public <T> CompletableFuture<Void> forEachIndexed(Collection<T> items, ObjIntConsumer<T> task) {
+    List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+    int index = 0;
+
+    for (T item : items) {
+      int itemIndex = index++;
+      futures.add(CompletableFuture.runAsync(() -> task.accept(item, itemIndex), this.executor));
+    }
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+  }
+
+  /**
+   * Applies the task to each of the items with at most <code>maxConcurrency</code> of them running at a time, and
+   * waits for all of them to complete.
+   *
+   * @param items          The items (queries) to apply the task to
+   * @param maxConcurrency The maximum number of items the task is applied to at the same time
+   * @param task           The task to apply to each item
+   * @param <T>            The type of item
+   * @param <R>            The type of result
+   * @return The results of the task, in the same order as the items they were produced from
+   */
+  @SuppressWarnings("unchecked")
+  public <T, R> List<R> mapConcurrently(List<T> items, int maxConcurrency, Function<T, R> task) {
+    Object[] results = new Object[items.size()];
+    AtomicInteger next = new AtomicInteger();
+    int workers = Math.max(1, Math.min(maxConcurrency, items.size()));
+    CompletableFuture<?>[] futures = new CompletableFuture[workers];
+
+    for (int i = 0; i < workers; i++) {
+      futures[i] = CompletableFuture.runAsync(() -> {
+        int index;
+        while ((index = next.getAndIncrement()) < items.size()) {
+          results[index] = task.apply(items.get(index));
+        }
+      }, this.resourceQueryExecutor);
+    }
+
+    CompletableFuture.allOf(futures).join();
+
+    List<R> ret = new ArrayList<>(results.length);
+    for (Object result : results) {
+      ret.add((R) result);
+    }
+    return ret;
+  }
+
+  /**
+   * The executor that the next page of a patient's search results is prefetched on
+   */
+  public Executor getPageExecutor() {
+    return this.pageExecutor;
+  }
+
+  /**
+   * Runs the task (i.e. storing a patient's data) in the background, without holding up the patient queries
+   */
+  public CompletableFuture<Void> runInBackground(Runnable task) {
+    return CompletableFuture.runAsync(task, this.storeExecutor);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.executor.shutdown();
+    this.resourceQueryExecutor.shutdown();
+    this.pageExecutor.shutdown();
+    this.storeExecutor.shutdown();
+  }
+}
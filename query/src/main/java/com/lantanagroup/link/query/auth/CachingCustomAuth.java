@@ -0,0 +1,127 @@
+package com.lantanagroup.link.query.auth;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Wraps an ICustomAuth implementation and holds on to the headers it returns, so that a token is not requested
+ * for every request made to the FHIR server. Bearer tokens that are JWTs are held until shortly before they expire;
+ * any other header is held for the configured duration. Call invalidate() when the server rejects the header.
+ * Implementations that cache their own token (see ICustomAuth.cachesToken()) should not be wrapped, as their token
+ * may be replaced before the header cached here expires.
+ */
+public class CachingCustomAuth implements ICustomAuth {
+  private static final Logger logger = LoggerFactory.getLogger(CachingCustomAuth.class);
+  private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(30);
+
+  private final ICustomAuth authorizer;
+  private final Duration cacheDuration;
+  private volatile CachedHeaders headers;
+
+  public CachingCustomAuth(ICustomAuth authorizer, Duration cacheDuration) {
+    this.authorizer = authorizer;
+    this.cacheDuration = cacheDuration;
+  }
+
+  @Override
+  public void setConfig(ICustomAuthConfig authConfig) throws Exception {
+    this.authorizer.setConfig(authConfig);
+    this.invalidate();
+  }
+
+  @Override
+  public String getAuthHeader() throws Exception {
+    return this.getHeaders().authHeader;
+  }
+
+  @Override
+  public String getApiKeyHeader() throws Exception {
+    return this.getHeaders().apiKey;
+  }
+
+  @Override
+  public void invalidate() {
+    this.headers = null;
+    this.authorizer.invalidate();
+  }
+
+  /**
+   * Discards the cached headers only if they still hold the rejected Authorization header, so that requests
+   * rejected at the same time result in a single new token rather than one each
+   *
+   * @param rejectedAuthHeader The Authorization header that the FHIR server rejected
+   */
+  @Override
+  public synchronized void invalidate(String rejectedAuthHeader) {
+    CachedHeaders current = this.headers;
+    if (current != null && !Objects.equals(current.authHeader, rejectedAuthHeader)) {
+      return;
+    }
+    this.invalidate();
+  }
+
+  private CachedHeaders getHeaders() throws Exception {
+    CachedHeaders current = this.headers;
+    if (current != null && Instant.now().isBefore(current.expiresAt)) {
+      return current;
+    }
+
+    synchronized (this) {
+      current = this.headers;
+      if (current != null && Instant.now().isBefore(current.expiresAt)) {
+        return current;
+      }
+
+      logger.debug("Requesting Authorization header from auth class");
+      String authHeader = this.authorizer.getAuthHeader();
+      String apiKey = this.authorizer.getApiKeyHeader();
+      current = new CachedHeaders(authHeader, apiKey, this.getExpiresAt(authHeader));
+
+      // Don't hold on to a failed request for a header, try again on the next request
+      if (authHeader != null || apiKey != null) {
+        this.headers = current;
+      }
+
+      return current;
+    }
+  }
+
+  private Instant getExpiresAt(String authHeader) {
+    Instant expiresAt = Instant.now().plus(this.cacheDuration);
+
+    if (authHeader != null && authHeader.startsWith("Bearer ")) {
+      try {
+        Date exp = JWT.decode(authHeader.substring("Bearer ".length())).getExpiresAt();
+        if (exp != null) {
+          Instant tokenExpiresAt = exp.toInstant().minus(EXPIRY_MARGIN);
+          if (tokenExpiresAt.isBefore(expiresAt)) {
+            expiresAt = tokenExpiresAt;
+          }
+        }
+      } catch (JWTDecodeException ex) {
+        logger.trace("Bearer token is not a JWT, caching it for {}", this.cacheDuration);
+      }
+    }
+
+    return expiresAt;
+  }
+
+  private static class CachedHeaders {
+    private final String authHeader;
+    private final String apiKey;
+    private final Instant expiresAt;
+
+    private CachedHeaders(String authHeader, String apiKey, Instant expiresAt) {
+      this.authHeader = authHeader;
+      this.apiKey = apiKey;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
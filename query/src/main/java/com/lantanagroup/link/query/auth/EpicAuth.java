@@ -18,16 +18,35 @@ import java.net.http.HttpResponse;
 import java.security.Key;
 import java.security.KeyFactory;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Instant;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class EpicAuth implements ICustomAuth {
   private static final Logger logger = LoggerFactory.getLogger(EpicAuth.class);
 
+  private static final long DEFAULT_EXPIRES_IN = 300;
+  private static final long MAX_REFRESH_MARGIN = 60;
+  private static final HttpClient httpClient = HttpClient.newHttpClient();
+  private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "epic-auth-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   @Autowired
   private EpicAuthConfig config;
 
+  private volatile CachedToken token;
+  private volatile boolean tokenUsed;
+  // The scheduled refresh of the current token, cancelled when the token is discarded so that only one refresh is ever pending
+  private ScheduledFuture<?> scheduledRefresh;
+
   public EpicAuth() {
 
   }
@@ -63,24 +82,98 @@ public class EpicAuth implements ICustomAuth {
 
   @Override
   public void setConfig(ICustomAuthConfig authConfig) throws Exception {
-    config = (EpicAuthConfig) authConfig;
+    synchronized (this) {
+      config = (EpicAuthConfig) authConfig;
+      this.discardToken();
+    }
   }
 
+  /**
+   * Returns the cached access token until it expires. The token is refreshed in the background shortly before
+   * it expires, so that callers normally never wait for a token request.
+   */
   @Override
   public String getAuthHeader() throws URISyntaxException {
+    this.tokenUsed = true;
+
+    CachedToken current = this.token;
+    if (current != null && current.isValid()) {
+      return current.authHeader;
+    }
+
+    synchronized (this) {
+      current = this.token;
+      if (current != null && current.isValid()) {
+        return current.authHeader;
+      }
+      return this.requestToken();
+    }
+  }
+
+  @Override
+  public void invalidate() {
+    synchronized (this) {
+      this.discardToken();
+    }
+  }
+
+  @Override
+  public void invalidate(String rejectedAuthHeader) {
+    synchronized (this) {
+      CachedToken current = this.token;
+      if (current != null && !current.authHeader.equals(rejectedAuthHeader)) {
+        return;
+      }
+      this.discardToken();
+    }
+  }
+
+  /**
+   * The token is cached until it expires and refreshed in the background, so it should not be cached again
+   */
+  @Override
+  public boolean cachesToken() {
+    return true;
+  }
+
+  private void discardToken() {
+    this.token = null;
+    if (this.scheduledRefresh != null) {
+      this.scheduledRefresh.cancel(false);
+      this.scheduledRefresh = null;
+    }
+  }
+
+  private void refresh() {
+    // Let tokens that nobody has asked for since the last refresh expire instead of refreshing them forever
+    if (!this.tokenUsed) {
+      logger.debug("Epic access token has not been used, not refreshing it");
+      return;
+    }
+    this.tokenUsed = false;
+
+    try {
+      synchronized (this) {
+        this.requestToken();
+      }
+    } catch (Exception ex) {
+      logger.error("Error refreshing authentication token from Epic: " + ex.getMessage(), ex);
+    }
+  }
+
+  private String requestToken() throws URISyntaxException {
     logger.debug("Generating JWT to request auth token from Epic");
 
     String jwt = getJwt(this.config);
     String requestBody = String.format("grant_type=client_credentials&client_assertion_type=urn:ietf:params:oauth:client-assertion-type:jwt-bearer&client_assertion=%s", jwt);
 
-    HttpClient client = HttpClient.newHttpClient();
     HttpRequest request = HttpRequest.newBuilder(new URI(this.config.getTokenUrl()))
             .header("Content-Type", "application/x-www-form-urlencoded")
             .POST(HttpRequest.BodyPublishers.ofString(requestBody))
             .build();
 
     try {
-      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
       String responseBody = response.body();
       Object responseObj = new Gson().fromJson(responseBody, Object.class);
 
@@ -89,8 +182,15 @@ public class EpicAuth implements ICustomAuth {
 
         if (responseTreeMap.containsKey("access_token")) {
           String accessToken = (String) responseTreeMap.get("access_token");
-          logger.debug("Acquired access token for Epic");
-          return "Bearer " + accessToken;
+          long expiresIn = responseTreeMap.get("expires_in") instanceof Number ?
+                  ((Number) responseTreeMap.get("expires_in")).longValue() :
+                  DEFAULT_EXPIRES_IN;
+          logger.debug("Acquired access token for Epic that expires in {} seconds", expiresIn);
+
+          this.discardToken();
+          this.token = new CachedToken("Bearer " + accessToken, expiresIn);
+          this.scheduledRefresh = refresher.schedule(this::refresh, this.token.refreshIn, TimeUnit.SECONDS);
+          return this.token.authHeader;
         } else {
           logger.error("Response from auth token request does not include an 'access_token' property");
         }
@@ -106,4 +206,21 @@ public class EpicAuth implements ICustomAuth {
   public String getApiKeyHeader() throws Exception {
     return null;
   }
+
+  private static class CachedToken {
+    private final String authHeader;
+    private final Instant expiresAt;
+    private final long refreshIn;
+
+    private CachedToken(String authHeader, long expiresIn) {
+      this.authHeader = authHeader;
+      this.expiresAt = Instant.now().plusSeconds(expiresIn);
+      // Refresh before the token expires, leaving time for the refresh request itself
+      this.refreshIn = expiresIn - Math.min(MAX_REFRESH_MARGIN, expiresIn / 2);
+    }
+
+    private boolean isValid() {
+      return Instant.now().isBefore(this.expiresAt);
+    }
+  }
 }
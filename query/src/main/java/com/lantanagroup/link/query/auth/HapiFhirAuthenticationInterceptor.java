@@ -14,13 +14,12 @@ import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.List;
 
 @Interceptor
 public class HapiFhirAuthenticationInterceptor {
   private static final Logger logger = LoggerFactory.getLogger(HapiFhirAuthenticationInterceptor.class);
   private final ICustomAuth authorizer;
-  private String authHeader;
-  private String apiKey;
 
   public HapiFhirAuthenticationInterceptor(QueryConfig queryConfig, ApplicationContext context) throws ClassNotFoundException {
     if (StringUtils.isEmpty(queryConfig.getAuthClass())) {
@@ -33,8 +32,8 @@ public class HapiFhirAuthenticationInterceptor {
 
     // Get an instance of the class using Spring so that it injects/autowires
     logger.debug(String.format("Getting an instance of the auth class \"%s\" from Spring", queryConfig.getAuthClass()));
-    authorizer = (ICustomAuth) context.getBean(authClass);
-    refresh();
+    authorizer = getCachingAuthorizer((ICustomAuth) context.getBean(authClass), queryConfig);
+    getHeader(true);
   }
 
   public HapiFhirAuthenticationInterceptor(QueryConfig queryConfig, ICustomAuthConfig authConfig) throws Exception {
@@ -51,21 +50,39 @@ public class HapiFhirAuthenticationInterceptor {
     Method setConfigMethod = authClass.getMethod("setConfig", ICustomAuthConfig.class);
     setConfigMethod.invoke(authObject, authConfig);
 
-    authorizer = (ICustomAuth) authObject;
-    refresh();
+    authorizer = getCachingAuthorizer((ICustomAuth) authObject, queryConfig);
+    getHeader(true);
 
   }
 
-  private void refresh() {
+  /**
+   * Wraps the auth class so that its headers are cached, unless it already caches its own token
+   */
+  private static ICustomAuth getCachingAuthorizer(ICustomAuth authorizer, QueryConfig queryConfig) {
+    if (authorizer.cachesToken()) {
+      return authorizer;
+    }
+    return new CachingCustomAuth(authorizer, queryConfig.getAuthCacheDuration());
+  }
+
+  private void refresh(IHttpRequest request) {
     if (authorizer == null) {
       return;
     }
+    List<String> rejected = request.getAllHeaders().get("Authorization");
+    authorizer.invalidate(rejected == null || rejected.isEmpty() ? null : rejected.get(0));
+  }
+
+  private String getHeader(boolean authHeader) {
+    if (authorizer == null) {
+      return null;
+    }
     try {
-      logger.debug("Requesting Authorization header from auth class");
-      this.authHeader = authorizer.getAuthHeader();
-      this.apiKey = authorizer.getApiKeyHeader();
+      // The authorizer caches the token, this only requests a new token when the cached one is about to expire
+      return authHeader ? authorizer.getAuthHeader() : authorizer.getApiKeyHeader();
     } catch (Exception ex) {
       logger.error("Error establishing Authorization header of FHIR server request: " + ex.getMessage());
+      return null;
     }
   }
 
@@ -75,11 +92,13 @@ public class HapiFhirAuthenticationInterceptor {
   }
 
   private void addHeaders(IHttpRequest request) {
-    if (this.authHeader != null && !this.authHeader.isEmpty()) {
-      request.addHeader("Authorization", this.authHeader);
+    String authHeader = getHeader(true);
+    String apiKey = getHeader(false);
+    if (authHeader != null && !authHeader.isEmpty()) {
+      request.addHeader("Authorization", authHeader);
     }
-    if (this.apiKey != null && !this.apiKey.isEmpty()) {
-      request.addHeader("apikey", this.apiKey);
+    if (apiKey != null && !apiKey.isEmpty()) {
+      request.addHeader("apikey", apiKey);
     }
   }
 
@@ -102,7 +121,7 @@ public class HapiFhirAuthenticationInterceptor {
     if (!(response.getResponse() instanceof HttpResponse)) {
       return;
     }
-    refresh();
+    refresh(request);
     removeHeaders(request);
     addHeaders(request);
     IHttpResponse newResponse = request.execute();
@@ -4,4 +4,29 @@ public interface ICustomAuth {
   void setConfig(ICustomAuthConfig authConfig) throws Exception;
   String getAuthHeader() throws Exception;
   String getApiKeyHeader() throws Exception;
+
+  /**
+   * Discards any token held by the implementation, such as after the FHIR server rejected it
+   */
+  default void invalidate() {
+  }
+
+  /**
+   * Discards the token held by the implementation if it is the one the FHIR server rejected. Implementations that
+   * cache a token should only discard it if it is still the rejected one, so that requests rejected at the same time
+   * result in a single new token rather than one each.
+   *
+   * @param rejectedAuthHeader The Authorization header that the FHIR server rejected
+   */
+  default void invalidate(String rejectedAuthHeader) {
+    this.invalidate();
+  }
+
+  /**
+   * Whether the implementation caches (and refreshes) its own token, in which case its headers are not cached again
+   * by CachingCustomAuth
+   */
+  default boolean cachesToken() {
+    return false;
+  }
 }
@@ -0,0 +1,105 @@
+package com.lantanagroup.link.query.uscore;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lantanagroup.link.config.query.USCoreConfig;
+import org.hl7.fhir.r4.model.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the non-patient resources (Locations, Medications, Practitioners, etc.) referenced by patient data, shared
+ * by all patients being queried so that each of them is only retrieved from the EHR once.
+ */
+@Component
+public class OtherResourceCache {
+  private final AsyncCache<String, Resource> cache;
+
+  @Autowired
+  public OtherResourceCache(USCoreConfig usCoreConfig) {
+    this(usCoreConfig.getOtherResourceCacheSize(), usCoreConfig.getOtherResourceCacheExpiry(), Ticker.systemTicker(), ForkJoinPool.commonPool());
+  }
+
+  OtherResourceCache(long maximumSize, Duration expiry, Ticker ticker, Executor executor) {
+    this.cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expiry.toMillis(), TimeUnit.MILLISECONDS)
+            .ticker(ticker)
+            .executor(executor)
+            .recordStats()
+            .buildAsync();
+  }
+
+  private static String getKey(String resourceType, String resourceId) {
+    return resourceType + "/" + resourceId;
+  }
+
+  /**
+   * @return The cached resource, or null if the resource is not cached (or is still being loaded)
+   */
+  public Resource get(String resourceType, String resourceId) {
+    CompletableFuture<Resource> future = this.cache.getIfPresent(getKey(resourceType, resourceId));
+    if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+      return null;
+    }
+    return future.join();
+  }
+
+  /**
+   * Gets the cached resource, loading it if it is not cached. Concurrent requests for the same resource wait for a
+   * single load rather than each loading the resource. The resource is loaded on the calling thread, outside of the
+   * cache's own locking, so that a slow load does not hold up requests for other resources.
+   *
+   * @param loader Loads the resource, returning null if it does not exist
+   * @return The resource, or null if it is not cached and could not be loaded
+   */
+  public Resource get(String resourceType, String resourceId, Supplier<Resource> loader) {
+    CompletableFuture<Resource> loading = new CompletableFuture<>();
+    CompletableFuture<Resource> future = this.cache.get(getKey(resourceType, resourceId), (key, executor) -> loading);
+
+    if (future == loading) {
+      try {
+        // A null (not found) or failed load is removed from the cache once the future completes
+        loading.complete(loader.get());
+      } catch (RuntimeException ex) {
+        loading.completeExceptionally(ex);
+        throw ex;
+      }
+    }
+
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  public void put(Resource resource) {
+    this.cache.put(getKey(resource.getResourceType().toString(), resource.getIdElement().getIdPart()), CompletableFuture.completedFuture(resource));
+  }
+
+  public CacheStats getStats() {
+    return this.cache.synchronous().stats();
+  }
+
+  /**
+   * @return The number of resources cached, once any pending evictions have been made
+   */
+  long size() {
+    this.cache.synchronous().cleanUp();
+    return this.cache.synchronous().estimatedSize();
+  }
+}
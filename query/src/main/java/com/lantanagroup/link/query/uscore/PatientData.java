@@ -2,6 +2,10 @@ package com.lantanagroup.link.query.uscore;
 
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
 import com.lantanagroup.link.*;
 import com.lantanagroup.link.config.query.USCoreConfig;
 import com.lantanagroup.link.config.query.USCoreOtherResourceTypeConfig;
@@ -9,7 +13,7 @@ import com.lantanagroup.link.config.query.USCoreQueryParametersResourceConfig;
 import com.lantanagroup.link.config.query.USCoreQueryParametersResourceParameterConfig;
 import com.lantanagroup.link.model.ReportContext;
 import com.lantanagroup.link.model.ReportCriteria;
-import org.hl7.fhir.instance.model.api.IBaseBundle;
+import com.lantanagroup.link.query.PatientQueryExecutor;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.slf4j.Logger;
@@ -21,10 +25,18 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class PatientData {
   private static final Logger logger = LoggerFactory.getLogger(PatientData.class);
+  private static final int DEFAULT_COUNT_PER_SEARCH = 100;
+  // The FHIR servers that have answered that they don't support batches, which other resources are read from
+  // individually instead. Servers are tried with batches again after an hour, in case they have since been upgraded.
+  private static final Cache<String, Boolean> batchUnsupportedServers = Caffeine.newBuilder()
+          .expireAfterWrite(1, TimeUnit.HOURS)
+          .build();
+  private static final ThreadLocal<IParser> xmlParser = ThreadLocal.withInitial(() -> FhirContextProvider.getFhirContext().newXmlParser());
 
   private final ReportCriteria criteria;
   private final ReportContext context;
@@ -37,11 +49,13 @@ public class PatientData {
   private Bundle bundle = new Bundle();
   private List<String> encounterReferences = new ArrayList<>();
   private EventService eventService;
-  private HashMap<String, Resource> otherResources;
+  private OtherResourceCache otherResources;
   private StopwatchManager stopwatchManager;
+  private PatientQueryExecutor patientQueryExecutor;
 
-  public PatientData(StopwatchManager stopwatchManager, HashMap<String, Resource> otherResources, EventService eventService, IGenericClient fhirQueryServer, ReportCriteria criteria, ReportContext context, Patient patient, USCoreConfig usCoreConfig, List<String> resourceTypes) {
+  public PatientData(StopwatchManager stopwatchManager, PatientQueryExecutor patientQueryExecutor, OtherResourceCache otherResources, EventService eventService, IGenericClient fhirQueryServer, ReportCriteria criteria, ReportContext context, Patient patient, USCoreConfig usCoreConfig, List<String> resourceTypes) {
     this.stopwatchManager = stopwatchManager;
+    this.patientQueryExecutor = patientQueryExecutor;
     this.otherResources = otherResources;
     this.eventService = eventService;
     this.fhirQueryServer = fhirQueryServer;
@@ -160,17 +174,15 @@ public class PatientData {
       }
 
       Bundle retBundle = new Bundle();
-      Bundle nextBundle = this.fhirQueryServer.search()
+      Bundle firstBundle = this.fhirQueryServer.search()
               .byUrl(query)
               .returnBundle(Bundle.class)
               .execute();
-      addSearchResults(nextBundle, retBundle);
 
-      while (nextBundle.getLink(IBaseBundle.LINK_NEXT) != null) {
-        nextBundle = this.fhirQueryServer.loadPage()
-                .next(nextBundle)
-                .execute();
-        addSearchResults(nextBundle, retBundle);
+      // The next page is requested while the results of the current page are added
+      Iterator<Bundle> pages = new PrefetchingPageIterator(this.fhirQueryServer, firstBundle, this.patientQueryExecutor.getPageExecutor());
+      while (pages.hasNext()) {
+        addSearchResults(pages.next(), retBundle);
       }
 
       retBundle.setTotal(retBundle.getEntry().size());
@@ -197,11 +209,10 @@ public class PatientData {
   }
 
   private void addSearchResults(Bundle searchset, Bundle patientData) {
-    IParser parser = FhirContextProvider.getFhirContext().newXmlParser();
     for (Bundle.BundleEntryComponent entry : searchset.getEntry()) {
       Resource resource = entry.getResource();
       if (resource instanceof OperationOutcome) {
-        logger.warn(parser.encodeResourceToString(resource));
+        logger.warn(xmlParser.get().encodeResourceToString(resource));
         continue;
       }
       patientData.addEntry().setResource(resource);
@@ -250,7 +261,7 @@ public class PatientData {
     }
 
     //Loop through resource types specified. If observation, use config to add individual category queries
-    Set<String> queryString = new HashSet<>();
+    Set<String> queryString = new LinkedHashSet<>();
     for (String resource : this.resourceTypes) {
       if (resource.equals("Encounter")) continue;   // Skip encounters because they were loaded earlier
       queryString.addAll(this.getQuery(measureId, resource, this.patientId));
@@ -258,8 +269,13 @@ public class PatientData {
 
     if (!queryString.isEmpty()) {
       try {
-        queryString.forEach(query -> {
-          Bundle bundle = this.rawSearch(query);
+        // Only the searches run in parallel; results are added to the bundle by this thread in the order of the queries
+        List<Bundle> bundles = this.patientQueryExecutor.mapConcurrently(
+                new ArrayList<>(queryString),
+                this.usCoreConfig.getParallelResourceQueries(),
+                this::rawSearch);
+
+        bundles.forEach(bundle -> {
           if (bundle != null) {
             this.bundle.getEntry().addAll(bundle.getEntry());
           }
@@ -277,21 +293,142 @@ public class PatientData {
     stopwatch.stop();
   }
 
-  private List<List<String>> separateByCount(List<String> resourceIds, Integer max) {
-    List<String> queue = List.copyOf(resourceIds); // So we don't modify the original List by ref
-    List<List<String>> ret = new Stack<>();
-    List<String> next = new Stack<>();
+  /**
+   * Retrieves the specified resources, at most <code>countPerSearch</code> of them per request. If the resource type
+   * supports searching, each set of ids is retrieved with an _id search, otherwise with a batch of GET requests. Any
+   * resources that cannot be retrieved that way are read individually instead.
+   *
+   * @param otherResourceType The configuration of the type of the resources to retrieve
+   * @param resourceIds       The ids of the resources to retrieve
+   * @return The resources that were found
+   */
+  private List<Resource> loadOtherResources(USCoreOtherResourceTypeConfig otherResourceType, List<String> resourceIds) {
+    String resourceType = otherResourceType.getResourceType();
+    boolean supportsSearch = Boolean.TRUE.equals(otherResourceType.getSupportsSearch());
+    Integer countPerSearch = otherResourceType.getCountPerSearch() != null && otherResourceType.getCountPerSearch() > 0 ?
+            otherResourceType.getCountPerSearch() : DEFAULT_COUNT_PER_SEARCH;
+    List<Resource> resources = new ArrayList<>();
+    List<String> unresolvedIds = new ArrayList<>();
+
+    for (List<String> ids : Lists.partition(resourceIds, countPerSearch)) {
+      List<Resource> found = supportsSearch ? this.searchOtherResources(resourceType, ids) : this.batchOtherResources(resourceType, ids);
+
+      if (found == null) {
+        unresolvedIds.addAll(ids);
+      } else {
+        found.forEach(this.otherResources::put);
+        resources.addAll(found);
+      }
+    }
+
+    if (!unresolvedIds.isEmpty()) {
+      resources.addAll(this.readOtherResources(resourceType, unresolvedIds));
+    }
+
+    return resources;
+  }
+
+  /**
+   * @return The resources found by an _id search for the ids, or null if the search failed
+   */
+  private List<Resource> searchOtherResources(String resourceType, List<String> resourceIds) {
+    try {
+      Bundle response = this.fhirQueryServer.search()
+              .forResource(resourceType)
+              .where(Resource.RES_ID.exactly().codes(resourceIds))
+              .count(resourceIds.size())
+              .returnBundle(Bundle.class)
+              .execute();
+
+      return getResourcesOfType(response, resourceType);
+    } catch (Exception ex) {
+      logger.warn("Could not search for other {} resources, reading them individually: {}", resourceType, ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return The resources found by a batch of GET requests for the ids, or null if the EHR did not accept the batch
+   */
+  private List<Resource> batchOtherResources(String resourceType, List<String> resourceIds) {
+    String serverBase = String.valueOf(this.fhirQueryServer.getServerBase());
+    if (batchUnsupportedServers.getIfPresent(serverBase) != null) {
+      return null;
+    }
+
+    Bundle batch = new Bundle();
+    batch.setType(BundleType.BATCH);
+    resourceIds.forEach(resourceId -> batch.addEntry()
+            .getRequest()
+            .setMethod(Bundle.HTTPVerb.GET)
+            .setUrl(resourceType + "/" + resourceId));
 
-    for (int i = 0; i < queue.size(); i++) {
-      next.add(queue.get(i));
+    try {
+      Bundle response = this.fhirQueryServer.transaction()
+              .withBundle(batch)
+              .execute();
 
-      if (next.size() >= max || i == queue.size() - 1) {
-        ret.add(next);
-        next = new Stack<>();
+      return getResourcesOfType(response, resourceType);
+    } catch (BaseServerResponseException ex) {
+      // Only an answer that batches aren't supported stops batches being sent; other failures (i.e. an expired token
+      // or being rate limited) may not happen for the next batch
+      if (isBatchUnsupported(ex)) {
+        if (batchUnsupportedServers.asMap().putIfAbsent(serverBase, true) == null) {
+          logger.warn("{} does not accept batches ({}), reading other resources individually for now", serverBase, ex.getStatusCode());
+        }
+      } else {
+        logger.warn("Could not retrieve other {} resources with a batch, reading them individually: {}", resourceType, ex.getMessage());
       }
+    } catch (Exception ex) {
+      logger.warn("Could not retrieve other {} resources with a batch, reading them individually: {}", resourceType, ex.getMessage());
+    }
+
+    return null;
+  }
+
+  /**
+   * @return Whether the EHR answered that it does not support batches at all, rather than failing this batch
+   */
+  private static boolean isBatchUnsupported(BaseServerResponseException ex) {
+    switch (ex.getStatusCode()) {
+      case 405:
+      case 501:
+        return true;
+      case 400:
+        // A bad request that the server explains is a rejection of the batch itself
+        return ex.getOperationOutcome() != null;
+      default:
+        return false;
     }
+  }
 
-    return ret;
+  private static List<Resource> getResourcesOfType(Bundle bundle, String resourceType) {
+    return bundle.getEntry().stream()
+            .map(Bundle.BundleEntryComponent::getResource)
+            .filter(resource -> resource != null && resource.getResourceType().toString().equals(resourceType))
+            .collect(Collectors.toList());
+  }
+
+  /**
+   * Reads each of the resources individually, on the resource query threads
+   */
+  private List<Resource> readOtherResources(String resourceType, List<String> resourceIds) {
+    // Reads go through the cache so that patients referencing the same resource at the same time only read it once
+    return this.patientQueryExecutor.mapConcurrently(resourceIds, this.usCoreConfig.getParallelResourceQueries(),
+                    resourceId -> this.otherResources.get(resourceType, resourceId, () -> {
+                      try {
+                        return (Resource) this.fhirQueryServer.read()
+                                .resource(resourceType)
+                                .withId(resourceId)
+                                .execute();
+                      } catch (Exception e) {
+                        logger.debug("Can't find resource of type: " + resourceType + " and id: " + resourceId);
+                        return null;
+                      }
+                    }))
+            .stream()
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
   }
 
   private void getOtherResources() {
@@ -329,48 +466,20 @@ public class PatientData {
 
         // Determine if other resource was already retrieved by as part of another patient query
         for (int i = allResourceIds.size() - 1; i >= 0; i--) {
-          String reference = resourceType + "/" + allResourceIds.get(i);
-          if (this.otherResources.containsKey(reference)) {
-            this.bundle.getEntry().add(new Bundle.BundleEntryComponent().setResource(this.otherResources.get(reference)));
+          Resource cached = this.otherResources.get(resourceType, allResourceIds.get(i));
+          if (cached != null) {
+            this.bundle.getEntry().add(new Bundle.BundleEntryComponent().setResource(cached));
             allResourceIds.remove(i);
           }
         }
 
-        logger.info("Loading {} other {} resources for patient {}", allResourceIds.size(), resourceType, patientId);
-        USCoreOtherResourceTypeConfig otherResourceTypeConfig = this.usCoreConfig.getOtherResourceTypes().stream()
-                .filter(ort -> ort.getResourceType().equals(resourceType))    // If we got to this point, we know a resourceType exists in the config that matches
-                .findFirst().get();
-
-        if (otherResourceTypeConfig.getSupportsSearch()) {
-          Integer countPerSearch = otherResourceTypeConfig.getCountPerSearch() != null ? otherResourceTypeConfig.getCountPerSearch() : 100;
-          List<List<String>> dividedQueries = this.separateByCount(allResourceIds, countPerSearch);
-
-          for (List<String> resourceIds : dividedQueries) {
-            Bundle otherResources = this.fhirQueryServer.search()
-                    .forResource(resourceType)
-                    .where(Resource.RES_ID.exactly().codes(resourceIds))
-                    .returnBundle(Bundle.class)
-                    .execute();
-
-            otherResources.getEntry().forEach(e -> {
-              this.otherResources.put(e.getResource().getResourceType().toString() + "/" + e.getResource().getIdElement().getIdPart(), e.getResource());
-              this.bundle.addEntry().setResource(e.getResource());
-            });
-          }
-        } else {
-          resourcesToGet.get(resourceType).parallelStream().forEach(resourceId -> {
-            try {
-              Resource resource = (Resource) this.fhirQueryServer.read()
-                      .resource(resourceType)
-                      .withId(resourceId)
-                      .execute();
-
-              this.otherResources.put(resource.getResourceType().toString() + "/" + resource.getIdElement().getIdPart(), resource);
-              this.bundle.addEntry().setResource(resource);
-            } catch (Exception e) {
-              logger.debug("Can't find resource of type: " + resourceType + " and id: " + resourceId);
-            }
-          });
+        if (!allResourceIds.isEmpty()) {
+          logger.info("Loading {} other {} resources for patient {}", allResourceIds.size(), resourceType, patientId);
+          USCoreOtherResourceTypeConfig otherResourceType = this.usCoreConfig.getOtherResourceTypes().stream()
+                  .filter(ort -> ort.getResourceType().equals(resourceType))    // If we got to this point, we know a resourceType exists in the config that matches
+                  .findFirst().get();
+          this.loadOtherResources(otherResourceType, allResourceIds)
+                  .forEach(resource -> this.bundle.addEntry().setResource(resource));
         }
 
         stopwatch.stop();
@@ -1,17 +1,18 @@
 package com.lantanagroup.link.query.uscore;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.lantanagroup.link.*;
 import com.lantanagroup.link.config.query.QueryConfig;
 import com.lantanagroup.link.config.query.USCoreConfig;
 import com.lantanagroup.link.model.PatientOfInterestModel;
 import com.lantanagroup.link.model.ReportContext;
 import com.lantanagroup.link.model.ReportCriteria;
+import com.lantanagroup.link.query.PatientQueryExecutor;
 import lombok.Getter;
 import lombok.Setter;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Patient;
-import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,8 +20,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
 
 @Getter
@@ -50,7 +52,11 @@ public class PatientScoop {
   @Autowired
   private StopwatchManager stopwatchManager;
 
-  private HashMap<String, Resource> otherResources = new HashMap<>();
+  @Autowired
+  private PatientQueryExecutor patientQueryExecutor;
+
+  @Autowired
+  private OtherResourceCache otherResourceCache;
 
   public void execute(ReportCriteria criteria, ReportContext context, List<PatientOfInterestModel> pois, String reportId, List<String> resourceTypes, String measureId) throws Exception {
     if (this.fhirQueryServer == null) {
@@ -60,13 +66,13 @@ public class PatientScoop {
     this.loadPatientData(criteria, context, pois, reportId, resourceTypes, measureId);
   }
 
-  private synchronized PatientData loadPatientData(ReportCriteria criteria, ReportContext context, Patient patient, List<String> resourceTypes, String measureId) {
+  private PatientData loadPatientData(ReportCriteria criteria, ReportContext context, Patient patient, List<String> resourceTypes, String measureId) {
     if (patient == null) return null;
 
     Stopwatch stopwatch = this.stopwatchManager.start("query-resources-patient");
 
     try {
-      PatientData patientData = new PatientData(this.stopwatchManager, this.otherResources, this.eventService, this.getFhirQueryServer(), criteria, context, patient, this.usCoreConfig, resourceTypes);
+      PatientData patientData = new PatientData(this.stopwatchManager, this.patientQueryExecutor, this.otherResourceCache, this.eventService, this.getFhirQueryServer(), criteria, context, patient, this.usCoreConfig, resourceTypes);
       patientData.loadData(measureId);
       return patientData;
     } catch (Exception e) {
@@ -79,15 +85,11 @@ public class PatientScoop {
   }
 
   public List<Patient> queryAndGetPatients(List<PatientOfInterestModel> patientsOfInterest) {
-    List<Patient> patients = new ArrayList<>();
-    int threshold = usCoreConfig.getParallelPatients();
-    ForkJoinPool patientFork = new ForkJoinPool(threshold);
+    Queue<Patient> patients = new ConcurrentLinkedQueue<>();
 
-    for(PatientOfInterestModel poi : patientsOfInterest) {
-      patientFork.submit(
-              () -> {
+    CompletableFuture<Void> patientQueries = this.patientQueryExecutor.forEachIndexed(patientsOfInterest,
+              (poi, poiIndex) -> {
                 Stopwatch stopwatch = this.stopwatchManager.start("query-patient");
-                int poiIndex = patientsOfInterest.indexOf(poi);
 
                 try {
                   if (poi.getReference() != null) {
@@ -135,20 +137,15 @@ public class PatientScoop {
                 }
               }
       );
-    }
-
-    patientFork.shutdown();
 
     try {
-      while (!patientFork.awaitTermination(30, TimeUnit.SECONDS)) {
-        logger.info("Waiting for patient queries to complete...");
-      }
+      patientQueries.join();
       logger.info("All patient queries completed.");
-    } catch (InterruptedException e) {
-      e.printStackTrace();
+    } catch (CompletionException e) {
+      logger.error("Error waiting for patient queries to complete", e.getCause());
     }
 
-    return patients;
+    return new ArrayList<>(patients);
   }
 
   public Bundle getPatientBundle(Patient patient, ReportCriteria criteria, ReportContext context, String reportId, List<String> resourceTypes, String measureId) {
@@ -187,13 +184,16 @@ public class PatientScoop {
     return patientBundle;
   }
 
-  public void queryAndGetPatientData(ReportCriteria criteria, ReportContext context, String reportId, List<String> resourceTypes, String measureId, List<Patient> patients) {
-    int threshold = usCoreConfig.getParallelPatients();
-    ForkJoinPool patientDataFork = new ForkJoinPool(threshold);
+  /**
+   * Queries and stores the data of each patient. When the data is handed off to measure evaluation in memory, it is
+   * stored in the background and the futures of those stores are added to <code>patientDataStores</code>.
+   */
+  public void queryAndGetPatientData(ReportCriteria criteria, ReportContext context, String reportId, List<String> resourceTypes, String measureId, List<Patient> patients, Collection<CompletableFuture<Void>> patientDataStores) {
+    // Only hand off the data when measure evaluation follows the query, otherwise nothing would remove it from the context
+    boolean handOff = this.usCoreConfig.isHandOffPatientData() && context.isHandOffPatientData();
 
-    for(Patient patient : patients) {
-      patientDataFork.submit(
-              () -> {
+    CompletableFuture<Void> patientDataQueries = this.patientQueryExecutor.forEach(patients,
+              patient -> {
                 // Get & Store patient data as Bundle
                 Bundle patientBundle = null;
                 try {
@@ -211,38 +211,75 @@ public class PatientScoop {
                     eventService.triggerDataEvent(EventTypes.AfterPatientDataQuery, patientBundle, criteria, context, null);
                     eventService.triggerDataEvent(EventTypes.BeforePatientDataStore, patientBundle, criteria, context, null);
 
-                    logger.info("START: Storing Patient data bundle Bundle/" + patientBundle.getId());
-
-                    Stopwatch stopwatch = this.stopwatchManager.start("store-patient-data");
-                    this.fhirDataProvider.updateResource(patientBundle);
-                    stopwatch.stop();
-
-                    eventService.triggerDataEvent(EventTypes.AfterPatientDataStore, patientBundle, criteria, context, null);
-
-                    logger.debug("END: Storing Patient data bundle Bundle/" + patientBundle.getId());
+                    if (handOff) {
+                      // Measure evaluation uses the bundle from the context rather than reading it back from the data store
+                      context.getPatientDataBundles().put(patientBundle.getIdElement().getIdPart(), patientBundle);
+                      Bundle bundleToStore = patientBundle;
+                      patientDataStores.add(this.patientQueryExecutor.runInBackground(() -> {
+                        try {
+                          this.storePatientBundle(bundleToStore, criteria, context);
+                        } catch (Exception storeEx) {
+                          throw new CompletionException(storeEx);
+                        }
+                      }));
+                    } else {
+                      this.storePatientBundle(patientBundle, criteria, context);
+                    }
                   }
                 } catch (Exception ex) {
-                  logger.info("Error getting/storing Patient data bundle - Exception is: " + ex.getMessage());
+                  logger.error("Error getting/storing Patient data bundle - Exception is: " + ex.getMessage());
                 }
               }
       );
+
+    try {
+      patientDataQueries.join();
+      logger.info("All patient data queries completed.");
+    } catch (CompletionException e) {
+      logger.error("Error waiting for patient data queries to complete", e.getCause());
     }
+  }
 
-    patientDataFork.shutdown();
+  private void storePatientBundle(Bundle patientBundle, ReportCriteria criteria, ReportContext context) throws Exception {
+    logger.info("START: Storing Patient data bundle Bundle/" + patientBundle.getId());
 
-    try {
-      while (!patientDataFork.awaitTermination(30, TimeUnit.SECONDS)) {
-        logger.info("Waiting for patient data queries to complete...");
+    Stopwatch stopwatch = this.stopwatchManager.start("store-patient-data");
+    this.fhirDataProvider.updateResource(patientBundle);
+    stopwatch.stop();
+
+    eventService.triggerDataEvent(EventTypes.AfterPatientDataStore, patientBundle, criteria, context, null);
+
+    logger.debug("END: Storing Patient data bundle Bundle/" + patientBundle.getId());
+  }
+
+  /**
+   * Waits for the patient data bundles being stored in the background, so that nothing reads, publishes or expunges
+   * the patient data before it has been stored
+   *
+   * @throws IllegalStateException if any of the bundles could not be stored
+   */
+  private void waitForPatientDataStores(Collection<CompletableFuture<Void>> patientDataStores, ReportContext context) {
+    int failed = 0;
+
+    for (CompletableFuture<Void> patientDataStore : patientDataStores) {
+      try {
+        patientDataStore.join();
+      } catch (CompletionException ex) {
+        logger.error("Error storing Patient data bundle - Exception is: " + ex.getCause().getMessage(), ex.getCause());
+        failed++;
       }
-      logger.info("All patient data queries completed.");
-    } catch (InterruptedException e) {
-      e.printStackTrace();
     }
 
+    if (failed > 0) {
+      // Don't evaluate data that the data store does not have
+      context.getPatientDataBundles().clear();
+      throw new IllegalStateException(String.format("Failed to store %s of %s patient data bundles", failed, patientDataStores.size()));
+    }
   }
 
   public void loadPatientData(ReportCriteria criteria, ReportContext context, List<PatientOfInterestModel> patientsOfInterest, String reportId, List<String> resourceTypes, String measureId) {
     int threshold = usCoreConfig.getParallelPatients();
+    Queue<CompletableFuture<Void>> patientDataStores = new ConcurrentLinkedQueue<>();
 
     List<Patient> patients = null;
     try {
@@ -256,10 +293,16 @@ public class PatientScoop {
       // loop through the patient ids to retrieve the patientData using each patient.
       logger.info(String.format("Throttling patient query load to " + threshold + " at a time"));
 
-      queryAndGetPatientData(criteria, context, reportId, resourceTypes, measureId, patients);
+      queryAndGetPatientData(criteria, context, reportId, resourceTypes, measureId, patients, patientDataStores);
 
     } catch (Exception e) {
       logger.error("Error scooping data for patients {}", e.getMessage(), e);
     }
+
+    this.waitForPatientDataStores(patientDataStores, context);
+
+    CacheStats otherResourceStats = this.otherResourceCache.getStats();
+    logger.info("Other resource cache: {} hits, {} misses, {} evictions",
+            otherResourceStats.hitCount(), otherResourceStats.missCount(), otherResourceStats.evictionCount());
   }
 }
@@ -0,0 +1,67 @@
+package com.lantanagroup.link.query.uscore;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates the pages of a searchset Bundle by following its "next" links. As soon as a page is returned the
+ * request for the following page is started, so that the next page is loaded while the caller processes the
+ * current one.
+ */
+public class PrefetchingPageIterator implements Iterator<Bundle> {
+  private final IGenericClient client;
+  private final Executor executor;
+  private CompletableFuture<Bundle> nextPage;
+
+  /**
+   * @param client    The client to load subsequent pages with
+   * @param firstPage The first page of the search results
+   * @param executor  The executor that subsequent pages are loaded on. Must not be an executor whose threads may be
+   *                  waiting on this iterator.
+   */
+  public PrefetchingPageIterator(IGenericClient client, Bundle firstPage, Executor executor) {
+    this.client = client;
+    this.executor = executor;
+    this.nextPage = CompletableFuture.completedFuture(firstPage);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return this.nextPage != null;
+  }
+
+  @Override
+  public Bundle next() {
+    if (this.nextPage == null) {
+      throw new NoSuchElementException();
+    }
+
+    Bundle page;
+    try {
+      page = this.nextPage.join();
+    } catch (CompletionException ex) {
+      this.nextPage = null;
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+
+    if (page.getLink(IBaseBundle.LINK_NEXT) != null) {
+      this.nextPage = CompletableFuture.supplyAsync(() -> this.client.loadPage()
+              .next(page)
+              .execute(), this.executor);
+    } else {
+      this.nextPage = null;
+    }
+
+    return page;
+  }
+}
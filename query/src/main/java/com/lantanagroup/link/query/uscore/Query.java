@@ -30,6 +30,10 @@ public class Query extends BaseQuery implements IQuery {
         PatientScoop scoop = this.applicationContext.getBean(PatientScoop.class);
         scoop.setFhirQueryServer(this.getFhirQueryClient());
         scoop.execute(criteria, context, patientsOfInterest, reportId, resourceTypes, measureId);
+      } catch (IllegalStateException ex) {
+        // Patient data that was handed off could not be stored, so the report must not be generated from it
+        logger.error("Error storing data for patients: " + ex.getMessage());
+        throw ex;
       } catch (Exception ex) {
         logger.error("Error scooping data for patients: " + ex.getMessage());
         ex.printStackTrace();
@@ -0,0 +1,140 @@
+package com.lantanagroup.link.query;
+
+import com.lantanagroup.link.config.query.USCoreConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PatientQueryExecutorTests {
+  private PatientQueryExecutor executor;
+
+  private PatientQueryExecutor createExecutor(int parallelPatients, int patientQueueDepth) {
+    USCoreConfig config = new USCoreConfig();
+    config.setParallelPatients(parallelPatients);
+    config.setPatientQueueDepth(patientQueueDepth);
+    this.executor = new PatientQueryExecutor(config);
+    return this.executor;
+  }
+
+  @After
+  public void shutdown() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+    }
+  }
+
+  @Test
+  public void forEachIndexedRunsEveryItemTest() {
+    PatientQueryExecutor executor = this.createExecutor(4, 100);
+    List<String> items = IntStream.range(0, 50).mapToObj(i -> "patient" + i).collect(Collectors.toList());
+    Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+    executor.forEachIndexed(items, indexes::put).join();
+
+    Assert.assertEquals(items.size(), indexes.size());
+    for (int i = 0; i < items.size(); i++) {
+      Assert.assertEquals(Integer.valueOf(i), indexes.get(items.get(i)));
+    }
+  }
+
+  @Test
+  public void forEachPropagatesExceptionsTest() {
+    PatientQueryExecutor executor = this.createExecutor(2, 100);
+    List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+    CompletableFuture<Void> future = executor.forEach(Arrays.asList("a", "b", "c"), item -> {
+      if (item.equals("b")) {
+        throw new IllegalStateException("Query failed for b");
+      }
+      completed.add(item);
+    });
+
+    try {
+      future.join();
+      Assert.fail("Expected the failure of one item to fail the returned future");
+    } catch (CompletionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+
+    // The other items still run
+    Assert.assertTrue(completed.containsAll(Arrays.asList("a", "c")));
+  }
+
+  @Test
+  public void forEachRunsOnCallerWhenQueueIsFullTest() throws InterruptedException {
+    PatientQueryExecutor executor = this.createExecutor(1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    Map<String, String> threads = new ConcurrentHashMap<>();
+
+    CompletableFuture<Void> future = executor.forEach(Arrays.asList("first", "second", "third"), item -> {
+      threads.put(item, Thread.currentThread().getName());
+      if (item.equals("first")) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    // "first" holds the only thread and "second" fills the queue, so "third" ran on this thread before forEach returned
+    Assert.assertEquals(Thread.currentThread().getName(), threads.get("third"));
+
+    release.countDown();
+    future.join();
+
+    Assert.assertTrue(threads.get("first").startsWith("patient-query-"));
+    Assert.assertTrue(threads.get("second").startsWith("patient-query-"));
+  }
+
+  @Test
+  public void mapConcurrentlyPreservesOrderTest() {
+    PatientQueryExecutor executor = this.createExecutor(2, 100);
+    List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+
+    // Later items finish first
+    List<String> results = executor.mapConcurrently(items, 4, item -> {
+      try {
+        Thread.sleep((100 - item) % 5);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return "result" + item;
+    });
+
+    Assert.assertEquals(items.size(), results.size());
+    for (int i = 0; i < items.size(); i++) {
+      Assert.assertEquals("result" + i, results.get(i));
+    }
+  }
+
+  @Test
+  public void mapConcurrentlyPropagatesExceptionsTest() {
+    PatientQueryExecutor executor = this.createExecutor(2, 100);
+
+    try {
+      executor.mapConcurrently(Arrays.asList(1, 2, 3), 2, item -> {
+        if (item == 2) {
+          throw new IllegalStateException("Query failed");
+        }
+        return item;
+      });
+      Assert.fail("Expected the failure of one item to fail mapConcurrently");
+    } catch (CompletionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.lantanagroup.link.query.auth;
+
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import com.lantanagroup.link.config.query.QueryConfig;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.apache.http.HttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.mockito.Mockito.*;
+
+public class CachingCustomAuthTests {
+  /**
+   * Returns a new Authorization header, created by the specified function, each time one is requested
+   */
+  public static class CountingAuth implements ICustomAuth {
+    private final AtomicInteger requests = new AtomicInteger();
+    private final IntFunction<String> tokens;
+    private boolean cachesToken;
+
+    public CountingAuth(IntFunction<String> tokens) {
+      this.tokens = tokens;
+    }
+
+    @Override
+    public String getAuthHeader() {
+      return "Bearer " + this.tokens.apply(this.requests.incrementAndGet());
+    }
+
+    @Override
+    public String getApiKeyHeader() {
+      return null;
+    }
+
+    @Override
+    public void setConfig(ICustomAuthConfig authConfig) {
+    }
+
+    @Override
+    public boolean cachesToken() {
+      return this.cachesToken;
+    }
+  }
+
+  private static String getJwt(int request, long expiresInMillis) {
+    return Jwts.builder()
+            .setSubject("token" + request)
+            .setExpiration(new Date(System.currentTimeMillis() + expiresInMillis))
+            .signWith(SignatureAlgorithm.HS256, "test-secret".getBytes(StandardCharsets.UTF_8))
+            .compact();
+  }
+
+  @Test
+  public void cachesJwtUntilShortlyBeforeExpiryTest() throws Exception {
+    // The token expires in 31 seconds, so it is only held for about a second (less the 30 second margin)
+    CountingAuth auth = new CountingAuth(request -> getJwt(request, 31000));
+    CachingCustomAuth caching = new CachingCustomAuth(auth, Duration.ofMinutes(5));
+
+    String first = caching.getAuthHeader();
+    Assert.assertEquals(first, caching.getAuthHeader());
+    Assert.assertEquals(1, auth.requests.get());
+
+    Thread.sleep(1500);
+
+    Assert.assertNotEquals(first, caching.getAuthHeader());
+    Assert.assertEquals(2, auth.requests.get());
+  }
+
+  @Test
+  public void cachesOpaqueTokenForCacheDurationTest() throws Exception {
+    CountingAuth auth = new CountingAuth(request -> "token" + request);
+    CachingCustomAuth caching = new CachingCustomAuth(auth, Duration.ofMillis(500));
+
+    Assert.assertEquals("Bearer token1", caching.getAuthHeader());
+    Assert.assertEquals("Bearer token1", caching.getAuthHeader());
+    Assert.assertEquals(1, auth.requests.get());
+
+    Thread.sleep(1000);
+
+    Assert.assertEquals("Bearer token2", caching.getAuthHeader());
+    Assert.assertEquals(2, auth.requests.get());
+  }
+
+  @Test
+  public void invalidatesOnlyRejectedTokenTest() throws Exception {
+    CountingAuth auth = new CountingAuth(request -> "token" + request);
+    CachingCustomAuth caching = new CachingCustomAuth(auth, Duration.ofMinutes(5));
+
+    Assert.assertEquals("Bearer token1", caching.getAuthHeader());
+
+    caching.invalidate("Bearer token1");
+    Assert.assertEquals("Bearer token2", caching.getAuthHeader());
+
+    // A request rejected with the previous token doesn't discard the new one
+    caching.invalidate("Bearer token1");
+    Assert.assertEquals("Bearer token2", caching.getAuthHeader());
+    Assert.assertEquals(2, auth.requests.get());
+  }
+
+  private static HapiFhirAuthenticationInterceptor createInterceptor(CountingAuth auth) throws ClassNotFoundException {
+    QueryConfig queryConfig = new QueryConfig();
+    queryConfig.setAuthClass(CountingAuth.class.getName());
+    ApplicationContext context = mock(ApplicationContext.class);
+    when(context.getBean(CountingAuth.class)).thenReturn(auth);
+    return new HapiFhirAuthenticationInterceptor(queryConfig, context);
+  }
+
+  private static IHttpResponse mockResponse(int status) {
+    IHttpResponse response = mock(IHttpResponse.class);
+    when(response.getStatus()).thenReturn(status);
+    when(response.getResponse()).thenReturn(mock(HttpResponse.class));
+    return response;
+  }
+
+  @Test
+  public void requestsNewTokenOnUnauthorizedTest() throws Exception {
+    CountingAuth auth = new CountingAuth(request -> "token" + request);
+    HapiFhirAuthenticationInterceptor interceptor = createInterceptor(auth);
+    Assert.assertEquals(1, auth.requests.get());
+
+    IHttpRequest request = mock(IHttpRequest.class);
+    Map<String, List<String>> headers = Collections.singletonMap("Authorization", Collections.singletonList("Bearer token1"));
+    when(request.getAllHeaders()).thenReturn(headers);
+    IHttpResponse retried = mockResponse(200);
+    when(request.execute()).thenReturn(retried);
+
+    // The cached token is used until the server rejects it
+    interceptor.interceptRequest(request);
+    interceptor.interceptResponse(request, mockResponse(200));
+    Assert.assertEquals(1, auth.requests.get());
+    verify(request, never()).execute();
+
+    interceptor.interceptResponse(request, mockResponse(401));
+    Assert.assertEquals(2, auth.requests.get());
+    verify(request).addHeader("Authorization", "Bearer token2");
+    verify(request).execute();
+  }
+
+  @Test
+  public void doesNotWrapAuthThatCachesTokenTest() throws Exception {
+    CountingAuth auth = new CountingAuth(request -> "token" + request);
+    auth.cachesToken = true;
+    HapiFhirAuthenticationInterceptor interceptor = createInterceptor(auth);
+
+    // Each request asks the auth class, which is responsible for its own caching
+    IHttpRequest request = mock(IHttpRequest.class);
+    interceptor.interceptRequest(request);
+    interceptor.interceptRequest(request);
+    Assert.assertEquals(3, auth.requests.get());
+    verify(request).addHeader("Authorization", "Bearer token2");
+    verify(request).addHeader("Authorization", "Bearer token3");
+  }
+}
@@ -1,17 +1,22 @@
 package com.lantanagroup.link.query.auth;
 
+import com.sun.net.httpserver.HttpServer;
 import io.jsonwebtoken.Jwt;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.impl.DefaultClaims;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EpicAuthTests {
   private static KeyPair getKeyPair() throws NoSuchAlgorithmException {
@@ -68,4 +73,86 @@ public class EpicAuthTests {
     System.out.println("Access token is: " + token);
   }
   */
+
+  /**
+   * Starts a token endpoint that returns a new token, valid for the specified number of seconds, for each request
+   */
+  private static HttpServer startTokenServer(AtomicInteger requests, int expiresIn) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/token", exchange -> {
+      int count = requests.incrementAndGet();
+      byte[] body = String.format("{\"access_token\": \"token%s\", \"expires_in\": %s}", count, expiresIn).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+    return server;
+  }
+
+  private static EpicAuthConfig getTokenServerConfig(HttpServer server) throws NoSuchAlgorithmException {
+    EpicAuthConfig config = new EpicAuthConfig();
+    config.setAudience("http://some-audience.com");
+    config.setClientId("some-test");
+    config.setKey(Base64.getEncoder().encodeToString(getKeyPair().getPrivate().getEncoded()));
+    config.setTokenUrl(String.format("http://localhost:%s/token", server.getAddress().getPort()));
+    return config;
+  }
+
+  @Test
+  public void refreshesBeforeExpiryTest() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = startTokenServer(requests, 2);
+    try {
+      EpicAuth auth = new EpicAuth(getTokenServerConfig(server));
+
+      Assert.assertEquals("Bearer token1", auth.getAuthHeader());
+      Assert.assertEquals("Bearer token1", auth.getAuthHeader());
+      Assert.assertEquals(1, requests.get());
+
+      // The token expires after two seconds and is refreshed after one, because it was used
+      Thread.sleep(1500);
+      Assert.assertEquals(2, requests.get());
+      Assert.assertEquals("Bearer token2", auth.getAuthHeader());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void skipsRefreshWhenIdleTest() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = startTokenServer(requests, 2);
+    try {
+      EpicAuth auth = new EpicAuth(getTokenServerConfig(server));
+      auth.getAuthHeader();
+
+      // Refreshed once because the first token was used, but the refreshed token was never used
+      Thread.sleep(3000);
+      Assert.assertEquals(2, requests.get());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void setConfigCancelsRefreshTest() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = startTokenServer(requests, 2);
+    try {
+      EpicAuth auth = new EpicAuth(getTokenServerConfig(server));
+      auth.getAuthHeader();
+      auth.setConfig(getTokenServerConfig(server));
+
+      // The refresh scheduled for the token from the previous config never happens
+      Thread.sleep(1500);
+      Assert.assertEquals(1, requests.get());
+
+      Assert.assertEquals("Bearer token2", auth.getAuthHeader());
+      Assert.assertEquals(2, requests.get());
+    } finally {
+      server.stop(0);
+    }
+  }
 }
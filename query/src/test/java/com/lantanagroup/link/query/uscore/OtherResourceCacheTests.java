@@ -0,0 +1,117 @@
+package com.lantanagroup.link.query.uscore;
+
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OtherResourceCacheTests {
+  private final AtomicLong nanos = new AtomicLong();
+
+  private OtherResourceCache createCache(long maximumSize) {
+    return new OtherResourceCache(maximumSize, Duration.ofHours(1), this.nanos::get, Runnable::run);
+  }
+
+  private static Resource createLocation(String id) {
+    Location location = new Location();
+    location.setId(id);
+    return location;
+  }
+
+  @Test
+  public void loadsOnceTest() {
+    OtherResourceCache cache = this.createCache(100);
+    AtomicInteger loads = new AtomicInteger();
+
+    Assert.assertNull(cache.get("Location", "loc1"));
+    Resource first = cache.get("Location", "loc1", () -> {
+      loads.incrementAndGet();
+      return createLocation("loc1");
+    });
+    Resource second = cache.get("Location", "loc1", () -> {
+      loads.incrementAndGet();
+      return createLocation("loc1");
+    });
+
+    Assert.assertEquals(1, loads.get());
+    Assert.assertSame(first, second);
+    Assert.assertSame(first, cache.get("Location", "loc1"));
+    Assert.assertEquals(2, cache.getStats().hitCount());
+  }
+
+  @Test
+  public void doesNotCacheMissingOrFailedLoadsTest() {
+    OtherResourceCache cache = this.createCache(100);
+
+    Assert.assertNull(cache.get("Location", "missing", () -> null));
+    Assert.assertNull(cache.get("Location", "missing"));
+
+    try {
+      cache.get("Location", "failed", () -> {
+        throw new IllegalStateException("EHR unavailable");
+      });
+      Assert.fail("Expected the failure to load the resource to be thrown");
+    } catch (IllegalStateException ignored) {
+    }
+
+    Resource loaded = cache.get("Location", "failed", () -> createLocation("failed"));
+    Assert.assertNotNull(loaded);
+    Assert.assertSame(loaded, cache.get("Location", "failed"));
+  }
+
+  @Test
+  public void slowLoadDoesNotBlockOtherKeysTest() throws Exception {
+    OtherResourceCache cache = this.createCache(100);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    CompletableFuture<Resource> slow = CompletableFuture.supplyAsync(() -> cache.get("Location", "slow", () -> {
+      loading.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return createLocation("slow");
+    }));
+
+    Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+    // Other resources are loaded while the slow one is still loading
+    Assert.assertNotNull(cache.get("Location", "fast", () -> createLocation("fast")));
+    Assert.assertFalse(slow.isDone());
+
+    release.countDown();
+    Assert.assertNotNull(slow.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void evictsBeyondMaximumSizeTest() {
+    OtherResourceCache cache = this.createCache(10);
+
+    for (int i = 0; i < 50; i++) {
+      cache.put(createLocation("loc" + i));
+    }
+
+    Assert.assertEquals(10, cache.size());
+  }
+
+  @Test
+  public void expiresAfterWriteTest() {
+    OtherResourceCache cache = this.createCache(100);
+    cache.put(createLocation("loc1"));
+
+    this.nanos.addAndGet(Duration.ofMinutes(59).toNanos());
+    Assert.assertNotNull(cache.get("Location", "loc1"));
+
+    this.nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    Assert.assertNull(cache.get("Location", "loc1"));
+  }
+}
@@ -0,0 +1,92 @@
+package com.lantanagroup.link.query.uscore;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.gclient.IGetPage;
+import ca.uhn.fhir.rest.gclient.IGetPageTyped;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.*;
+
+public class PrefetchingPageIteratorTests {
+  private static Bundle createPage(String nextUrl) {
+    Bundle page = new Bundle();
+    if (nextUrl != null) {
+      page.addLink().setRelation(IBaseBundle.LINK_NEXT).setUrl(nextUrl);
+    }
+    return page;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static void mockNextPage(IGetPage getPage, Bundle page, Bundle nextPage) {
+    IGetPageTyped typed = mock(IGetPageTyped.class);
+    when(getPage.next(page)).thenReturn(typed);
+    when(typed.execute()).thenReturn(nextPage);
+  }
+
+  @Test
+  public void iteratesEveryPageTest() {
+    IGenericClient client = mock(IGenericClient.class);
+    IGetPage getPage = mock(IGetPage.class);
+    when(client.loadPage()).thenReturn(getPage);
+
+    Bundle first = createPage("http://test.com/fhir?page=2");
+    Bundle second = createPage("http://test.com/fhir?page=3");
+    Bundle third = createPage(null);
+    mockNextPage(getPage, first, second);
+    mockNextPage(getPage, second, third);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      PrefetchingPageIterator pages = new PrefetchingPageIterator(client, first, executor);
+
+      Assert.assertSame(first, pages.next());
+      Assert.assertSame(second, pages.next());
+      Assert.assertTrue(pages.hasNext());
+      Assert.assertSame(third, pages.next());
+      Assert.assertFalse(pages.hasNext());
+
+      // The last page has no next link, so no further page is requested
+      verify(getPage, never()).next(third);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void surfacesErrorsTest() {
+    IGenericClient client = mock(IGenericClient.class);
+    IGetPage getPage = mock(IGetPage.class);
+    when(client.loadPage()).thenReturn(getPage);
+
+    Bundle first = createPage("http://test.com/fhir?page=2");
+    when(getPage.next(first)).thenThrow(new FhirClientConnectionException("Connection refused"));
+
+    PrefetchingPageIterator pages = new PrefetchingPageIterator(client, first, Runnable::run);
+
+    Assert.assertSame(first, pages.next());
+    Assert.assertTrue(pages.hasNext());
+
+    try {
+      pages.next();
+      Assert.fail("Expected the failure to load the second page to be thrown");
+    } catch (FhirClientConnectionException ex) {
+      Assert.assertEquals("Connection refused", ex.getMessage());
+    }
+
+    Assert.assertFalse(pages.hasNext());
+
+    try {
+      pages.next();
+      Assert.fail("Expected no more pages after the failure");
+    } catch (NoSuchElementException ignored) {
+    }
+  }
+}
@@ -2,6 +2,9 @@ package com.lantanagroup.link.query.uscore;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.*;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.lantanagroup.link.EventService;
 import com.lantanagroup.link.FhirDataProvider;
 import com.lantanagroup.link.StopwatchManager;
 import com.lantanagroup.link.config.query.QueryConfig;
@@ -10,14 +13,20 @@ import com.lantanagroup.link.config.query.USCoreOtherResourceTypeConfig;
 import com.lantanagroup.link.model.PatientOfInterestModel;
 import com.lantanagroup.link.model.ReportContext;
 import com.lantanagroup.link.model.ReportCriteria;
+import com.lantanagroup.link.query.PatientQueryExecutor;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
+import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.*;
 
@@ -48,6 +57,8 @@ public class QueryTests {
     patientScoop.setQueryConfig(queryConfig);
     patientScoop.setFhirQueryServer(fhirQueryClient);
     patientScoop.setFhirDataProvider(mock(FhirDataProvider.class));
+    patientScoop.setPatientQueryExecutor(new PatientQueryExecutor(usCoreConfig));
+    patientScoop.setOtherResourceCache(new OtherResourceCache(usCoreConfig));
 
     ApplicationContext applicationContext = mock(ApplicationContext.class);
     when(applicationContext.getBean(PatientScoop.class)).thenReturn(patientScoop);
@@ -320,4 +331,260 @@ public class QueryTests {
 //    Assert.assertEquals(true, foundMedication3.isPresent());
 //    Assert.assertEquals(true, foundLocation1.isPresent());
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void otherResourcesBatchTest() {
+    IGenericClient fhirQueryClient = mock(IGenericClient.class);
+    when(fhirQueryClient.getServerBase()).thenReturn("http://batch.test/fhir");
+
+    USCoreConfig usCoreConfig = new USCoreConfig();
+    List<USCoreOtherResourceTypeConfig> extraResources = new ArrayList<>();
+    // At most two locations per batch
+    extraResources.add(new USCoreOtherResourceTypeConfig("Location", false, 2));
+    usCoreConfig.setOtherResourceTypes(extraResources);
+
+    // The patient has one encounter at three locations
+    Encounter encounter = new Encounter();
+    encounter.setId("encounter1");
+    encounter.addLocation().setLocation(new Reference("Location/location1"));
+    encounter.addLocation().setLocation(new Reference("Location/location2"));
+    encounter.addLocation().setLocation(new Reference("Location/location3"));
+    Bundle encounterBundle = new Bundle();
+    encounterBundle.addEntry().setResource(encounter);
+
+    IUntypedQuery<IBaseBundle> untypedQuery = mock(IUntypedQuery.class);
+    IQuery<IBaseBundle> encounterBaseQuery = mock(IQuery.class);
+    IQuery<Bundle> encounterQuery = mock(IQuery.class);
+    when(fhirQueryClient.search()).thenReturn(untypedQuery);
+    when(untypedQuery.byUrl("Encounter?patient=Patient/patient1")).thenReturn(encounterBaseQuery);
+    when(encounterBaseQuery.returnBundle(Bundle.class)).thenReturn(encounterQuery);
+    when(encounterQuery.execute()).thenReturn(encounterBundle);
+
+    // The batch response has a Location for each GET in the batch
+    List<Bundle> batches = new ArrayList<>();
+    ITransaction transaction = mock(ITransaction.class);
+    when(fhirQueryClient.transaction()).thenReturn(transaction);
+    when(transaction.withBundle(any(Bundle.class))).thenAnswer(invocation -> {
+      Bundle batch = invocation.getArgument(0);
+      batches.add(batch);
+      Bundle response = new Bundle();
+      response.setType(Bundle.BundleType.BATCHRESPONSE);
+      for (Bundle.BundleEntryComponent entry : batch.getEntry()) {
+        response.addEntry().setResource(new Location().setId(entry.getRequest().getUrl()));
+      }
+      ITransactionTyped<Bundle> typed = mock(ITransactionTyped.class);
+      when(typed.execute()).thenReturn(response);
+      return typed;
+    });
+
+    Patient patient = new Patient();
+    patient.setId("patient1");
+    PatientData patientData = new PatientData(new StopwatchManager(), new PatientQueryExecutor(usCoreConfig),
+            new OtherResourceCache(usCoreConfig), null, fhirQueryClient, new ReportCriteria(List.of(), null, null, null, null),
+            null, patient, usCoreConfig, List.of("Encounter"));
+    patientData.loadData("measure1");
+
+    // The three locations are retrieved with two batches, and never read individually
+    Assert.assertEquals(2, batches.size());
+    Assert.assertEquals(Bundle.BundleType.BATCH, batches.get(0).getType());
+    Assert.assertEquals(2, batches.get(0).getEntry().size());
+    Assert.assertEquals(1, batches.get(1).getEntry().size());
+    verify(fhirQueryClient, never()).read();
+
+    List<String> locationIds = patientData.getBundle().getEntry().stream()
+            .map(Bundle.BundleEntryComponent::getResource)
+            .filter(resource -> resource instanceof Location)
+            .map(resource -> resource.getIdElement().getIdPart())
+            .sorted()
+            .collect(Collectors.toList());
+    Assert.assertEquals(List.of("location1", "location2", "location3"), locationIds);
+  }
+
+  /**
+   * Creates a client for the specified server whose only data for patient1 is an encounter at location1, and whose
+   * batch requests fail with each of the specified exceptions in turn before succeeding
+   */
+  @SuppressWarnings("unchecked")
+  private static IGenericClient createBatchFailureClient(String serverBase, List<Bundle> batches, BaseServerResponseException... failures) {
+    IGenericClient fhirQueryClient = mock(IGenericClient.class);
+    when(fhirQueryClient.getServerBase()).thenReturn(serverBase);
+
+    Encounter encounter = new Encounter();
+    encounter.setId("encounter1");
+    encounter.addLocation().setLocation(new Reference("Location/location1"));
+    Bundle encounterBundle = new Bundle();
+    encounterBundle.addEntry().setResource(encounter);
+
+    IUntypedQuery<IBaseBundle> untypedQuery = mock(IUntypedQuery.class);
+    IQuery<IBaseBundle> encounterBaseQuery = mock(IQuery.class);
+    IQuery<Bundle> encounterQuery = mock(IQuery.class);
+    when(fhirQueryClient.search()).thenReturn(untypedQuery);
+    when(untypedQuery.byUrl("Encounter?patient=Patient/patient1")).thenReturn(encounterBaseQuery);
+    when(encounterBaseQuery.returnBundle(Bundle.class)).thenReturn(encounterQuery);
+    when(encounterQuery.execute()).thenReturn(encounterBundle);
+
+    ITransaction transaction = mock(ITransaction.class);
+    when(fhirQueryClient.transaction()).thenReturn(transaction);
+    when(transaction.withBundle(any(Bundle.class))).thenAnswer(invocation -> {
+      Bundle batch = invocation.getArgument(0);
+      batches.add(batch);
+      ITransactionTyped<Bundle> typed = mock(ITransactionTyped.class);
+      if (batches.size() <= failures.length) {
+        when(typed.execute()).thenThrow(failures[batches.size() - 1]);
+      } else {
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.BATCHRESPONSE);
+        response.addEntry().setResource(new Location().setId("location1"));
+        when(typed.execute()).thenReturn(response);
+      }
+      return typed;
+    });
+
+    return fhirQueryClient;
+  }
+
+  private static void loadBatchPatientData(IGenericClient fhirQueryClient) {
+    USCoreConfig usCoreConfig = new USCoreConfig();
+    usCoreConfig.setOtherResourceTypes(List.of(new USCoreOtherResourceTypeConfig("Location", false, 2)));
+
+    Patient patient = new Patient();
+    patient.setId("patient1");
+    // Each patient gets its own cache, so that every patient requests the location
+    PatientData patientData = new PatientData(new StopwatchManager(), new PatientQueryExecutor(usCoreConfig),
+            new OtherResourceCache(usCoreConfig), null, fhirQueryClient, new ReportCriteria(List.of(), null, null, null, null),
+            null, patient, usCoreConfig, List.of("Encounter"));
+    patientData.loadData("measure1");
+  }
+
+  @Test
+  public void otherResourcesBatchFailureTest() {
+    List<Bundle> batches = new ArrayList<>();
+    IGenericClient fhirQueryClient = createBatchFailureClient("http://batch-failure.test/fhir", batches,
+            new AuthenticationException("Token expired"),
+            BaseServerResponseException.newInstance(429, "Too many requests"));
+
+    for (int i = 0; i < 3; i++) {
+      loadBatchPatientData(fhirQueryClient);
+    }
+
+    // An expired token or being rate limited doesn't stop the next patient's batch
+    Assert.assertEquals(3, batches.size());
+  }
+
+  @Test
+  public void otherResourcesBatchUnsupportedTest() {
+    List<Bundle> batches = new ArrayList<>();
+    IGenericClient fhirQueryClient = createBatchFailureClient("http://batch-unsupported.test/fhir", batches,
+            BaseServerResponseException.newInstance(405, "Method not allowed"));
+
+    for (int i = 0; i < 3; i++) {
+      loadBatchPatientData(fhirQueryClient);
+    }
+
+    // The server doesn't support batches, so the later patients read the location individually
+    Assert.assertEquals(1, batches.size());
+    verify(fhirQueryClient, atLeastOnce()).read();
+  }
+
+  /**
+   * Creates a scoop that reads patient1 and patient2 from the EHR (without any other data) and stores their bundles
+   * to the specified data store
+   */
+  @SuppressWarnings("unchecked")
+  private static PatientScoop createHandOffScoop(FhirDataProvider dataStore) {
+    USCoreConfig usCoreConfig = new USCoreConfig();
+    usCoreConfig.setHandOffPatientData(true);
+
+    IGenericClient fhirQueryClient = mock(IGenericClient.class);
+    IRead read = mock(IRead.class);
+    IReadTyped<Patient> readTyped = mock(IReadTyped.class);
+    when(fhirQueryClient.read()).thenReturn(read);
+    when(read.resource(Patient.class)).thenReturn(readTyped);
+    for (String patientId : List.of("patient1", "patient2")) {
+      IReadExecutable<Patient> readExecutable = mock(IReadExecutable.class);
+      when(readTyped.withId(patientId)).thenReturn(readExecutable);
+      when(readExecutable.execute()).thenReturn((Patient) new Patient().setId(patientId));
+    }
+
+    PatientScoop patientScoop = new PatientScoop();
+    patientScoop.setStopwatchManager(new StopwatchManager());
+    patientScoop.setUsCoreConfig(usCoreConfig);
+    patientScoop.setFhirQueryServer(fhirQueryClient);
+    patientScoop.setFhirDataProvider(dataStore);
+    patientScoop.setEventService(mock(EventService.class));
+    patientScoop.setPatientQueryExecutor(new PatientQueryExecutor(usCoreConfig));
+    patientScoop.setOtherResourceCache(new OtherResourceCache(usCoreConfig));
+    return patientScoop;
+  }
+
+  private static List<PatientOfInterestModel> getHandOffPatients() {
+    return List.of(new PatientOfInterestModel("Patient/patient1", null), new PatientOfInterestModel("Patient/patient2", null));
+  }
+
+  @Test
+  public void handOffPatientDataTest() {
+    // Storing is slow, so the scoop would finish before the bundles are stored if it did not wait for them
+    Set<String> stored = ConcurrentHashMap.newKeySet();
+    FhirDataProvider dataStore = mock(FhirDataProvider.class);
+    when(dataStore.updateResource(any())).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      stored.add(((Bundle) invocation.getArgument(0)).getIdElement().getIdPart());
+      return null;
+    });
+
+    ReportContext context = new ReportContext(dataStore);
+    context.setHandOffPatientData(true);
+    ReportCriteria criteria = new ReportCriteria(List.of(), null, null, null, null);
+    createHandOffScoop(dataStore).loadPatientData(criteria, context, getHandOffPatients(), "report1", Collections.emptyList(), "measure1");
+
+    Assert.assertEquals(2, stored.size());
+    Assert.assertEquals(stored, context.getPatientDataBundles().keySet());
+  }
+
+  @Test
+  public void handOffPatientDataOnlyForEvaluationTest() {
+    FhirDataProvider dataStore = mock(FhirDataProvider.class);
+
+    // Nothing evaluates the patient data (i.e. a scoop-only request), so the bundles are only stored
+    ReportContext context = new ReportContext(dataStore);
+    ReportCriteria criteria = new ReportCriteria(List.of(), null, null, null, null);
+    createHandOffScoop(dataStore).loadPatientData(criteria, context, getHandOffPatients(), "report1", Collections.emptyList(), "measure1");
+
+    verify(dataStore, times(2)).updateResource(any());
+    Assert.assertTrue(context.getPatientDataBundles().isEmpty());
+  }
+
+  @Test
+  public void handOffPatientDataStoreFailureTest() {
+    FhirDataProvider dataStore = mock(FhirDataProvider.class);
+    when(dataStore.updateResource(any())).thenAnswer(invocation -> {
+      Bundle patientBundle = invocation.getArgument(0);
+      if (patientBundle.getEntryFirstRep().getResource().getIdElement().getIdPart().equals("patient2")) {
+        throw new IllegalStateException("Data store unavailable");
+      }
+      return null;
+    });
+
+    ReportContext context = new ReportContext(dataStore);
+    context.setHandOffPatientData(true);
+    ReportCriteria criteria = new ReportCriteria(List.of(), null, null, null, null);
+
+    PatientScoop scoop = createHandOffScoop(dataStore);
+    ApplicationContext applicationContext = mock(ApplicationContext.class);
+    when(applicationContext.getBean(PatientScoop.class)).thenReturn(scoop);
+    Query query = new Query();
+    query.setApplicationContext(applicationContext);
+    query.setFhirQueryClient(scoop.getFhirQueryServer());
+
+    try {
+      query.execute(criteria, context, getHandOffPatients(), "report1", Collections.emptyList(), "measure1");
+      Assert.fail("Expected the failure to store a patient's data to fail the query");
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals("Failed to store 1 of 2 patient data bundles", ex.getMessage());
+    }
+
+    // Nothing is left for measure evaluation
+    Assert.assertTrue(context.getPatientDataBundles().isEmpty());
+  }
 }